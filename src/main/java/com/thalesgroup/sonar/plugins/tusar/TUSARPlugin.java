@@ -11,11 +11,16 @@ import com.thalesgroup.sonar.plugins.tusar.metrics.AcceptanceWidget;
 import com.thalesgroup.sonar.plugins.tusar.metrics.MemoryMetrics;
 import com.thalesgroup.sonar.plugins.tusar.metrics.MemoryWidget;
 import com.thalesgroup.sonar.plugins.tusar.metrics.NewMetrics;
+import com.thalesgroup.sonar.plugins.tusar.metrics.PerTestCoverageMetrics;
+import com.thalesgroup.sonar.plugins.tusar.metrics.TestDurationMetrics;
+import com.thalesgroup.sonar.plugins.tusar.metrics.ViolationMetrics;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReferenceExtractor;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportPreprocessor;
 import com.thalesgroup.sonar.plugins.tusar.rules.TusarCommonRulesEngine;
 import com.thalesgroup.sonar.plugins.tusar.rules.TusarProfileDefinition;
 import com.thalesgroup.sonar.plugins.tusar.rules.TusarRuleDefinitions;
+import com.thalesgroup.sonar.plugins.tusar.sensors.AbstractSensor;
 import com.thalesgroup.sonar.plugins.tusar.sensors.PostProcessing;
 import com.thalesgroup.sonar.plugins.tusar.sensors.TusarCoverageSensor;
 import com.thalesgroup.sonar.plugins.tusar.sensors.TusarMeasuresSensor;
@@ -32,6 +37,11 @@ public class TusarPlugin extends SonarPlugin {
 		        TusarViolationsSensor.refExtractor)) {
 			ReportExtractor.registerReferenceExtractor(refExtractor);
 		}
+		for (ReportPreprocessor<?> preprocessor : Arrays.asList( //
+		        TusarTestsSensor.preprocessor, //
+		        TusarCoverageSensor.preprocessor)) {
+			ReportExtractor.registerReportPreprocessor(preprocessor);
+		}
 	}
 
 	@Override
@@ -39,9 +49,23 @@ public class TusarPlugin extends SonarPlugin {
 		return Arrays.asList( //
 		        ReportExtractor.TUSAR_REPORTS_PATHS_PROPERTY, //
 		        ReportExtractor.TUSAR_USE_PLACEHOLDER_PROPERTY, //
+		        ReportExtractor.TUSAR_INCREMENTAL_PROPERTY, //
+		        ReportExtractor.TUSAR_DIGEST_STORE_DIR_PROPERTY, //
+		        ReportExtractor.TUSAR_PREPROCESSING_PARALLELISM_PROPERTY, //
 		        NewMetrics.TUSAR_NEW_METRICS_PROPERTY, //
 		        PostProcessing.TUSAR_POST_PROCESSING_LANGUAGE_PROPERTY, //
 		        PostProcessing.TUSAR_POST_PROCESSING_SCRIPT_PROPERTY, //
+		        AbstractSensor.TUSAR_PARALLELISM_PROPERTY, //
+		        TusarMeasuresSensor.TUSAR_DUPLICATIONS_MAX_DATA_SIZE_PROPERTY, //
+		        TusarMeasuresSensor.TUSAR_ROLLUPS_PROPERTY, //
+		        TusarCoverageSensor.TUSAR_COVERAGE_MERGE_PROPERTY, //
+		        TusarCoverageSensor.TUSAR_PER_TEST_COVERAGE_PROPERTY, //
+		        TusarTestsSensor.TUSAR_TESTS_MAX_STACK_TRACE_LENGTH_PROPERTY, //
+		        TusarTestsSensor.TUSAR_TESTS_MAX_STACK_TRACES_PROPERTY, //
+		        TusarTestsSensor.TUSAR_SLOWEST_TESTS_PROPERTY, //
+		        TusarViolationsSensor.TUSAR_VIOLATIONS_DEDUPLICATION_PROPERTY, //
+		        TusarViolationsSensor.TUSAR_VIOLATIONS_MAX_PER_FILE_PROPERTY, //
+		        TusarViolationsSensor.TUSAR_VIOLATIONS_MAX_PER_RULE_PROPERTY, //
 
 		        TusarProjectBuilder.class, //
 		        TusarLanguage.class, //
@@ -51,6 +75,9 @@ public class TusarPlugin extends SonarPlugin {
 		        MemoryMetrics.class, //
 		        MemoryWidget.class, //
 		        NewMetrics.class, //
+		        PerTestCoverageMetrics.class, //
+		        TestDurationMetrics.class, //
+		        ViolationMetrics.class, //
 
 		        TusarProfileDefinition.class, //
 		        TusarRuleDefinitions.class, //
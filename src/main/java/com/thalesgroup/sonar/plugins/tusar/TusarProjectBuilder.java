@@ -32,6 +32,10 @@ public class TusarProjectBuilder extends ProjectBuilder implements ProjectAnalys
 	@Override
 	public void build(Context context) {
 		logger.debug("Unavoidable early pre-initialization of the TUSAR plugin");
+		/*
+		 * The reports keep on being preprocessed in background while SonarQube
+		 * is indexing the files instead of waiting for the sensors.
+		 */
 		ReportExtractor.createRootInstance(context.projectReactor().getRoot(), batchSettings);
 		super.build(context);
 	}
@@ -115,6 +119,7 @@ public class TusarProjectBuilder extends ProjectBuilder implements ProjectAnalys
 				}
 			} else if (event.isEnd()) {
 				logger.debug("---------  Ending analysis of {} {}", project.getName(), project.getBranch());
+				tusarExtractor.saveDigests();
 				/*
 				 * Since SonarQube 5.0.1 (maybe 4.5 in fact), we need to delay
 				 * the placeholders removal until the end of the full analysis.
@@ -0,0 +1,43 @@
+package com.thalesgroup.sonar.plugins.tusar.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metrics;
+import org.sonar.api.measures.SumChildValuesFormula;
+
+public class PerTestCoverageMetrics implements Metrics {
+
+	public static final Metric COVERING_TESTS = //
+	new Metric.Builder("covering_tests", "Covering tests", Metric.ValueType.INT) //
+	        .setDescription("The number of tests covering at least one line of the file.") //
+	        .setDirection(Metric.DIRECTION_BETTER) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .create();
+
+	public static final Metric SINGLE_TEST_COVERED_LINES = //
+	new Metric.Builder("single_test_covered_lines", "Lines covered by a single test", Metric.ValueType.INT) //
+	        .setDescription("The number of lines covered by one test only.") //
+	        .setDirection(Metric.DIRECTION_WORST) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .setFormula(new SumChildValuesFormula(false)) //
+	        .create();
+
+	public static final Metric MULTIPLE_TESTS_COVERED_LINES = //
+	new Metric.Builder("multiple_tests_covered_lines", "Lines covered by several tests", Metric.ValueType.INT) //
+	        .setDescription("The number of lines covered by at least two tests.") //
+	        .setDirection(Metric.DIRECTION_BETTER) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .setFormula(new SumChildValuesFormula(false)) //
+	        .create();
+
+	@Override
+	public List<Metric> getMetrics() {
+		return Arrays.asList(COVERING_TESTS, SINGLE_TEST_COVERED_LINES, MULTIPLE_TESTS_COVERED_LINES);
+	}
+}
@@ -0,0 +1,61 @@
+package com.thalesgroup.sonar.plugins.tusar.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metrics;
+
+/**
+ * Test case durations, measured on test suites and on projects (and modules)
+ * since the percentiles of the children can't be aggregated.
+ */
+public class TestDurationMetrics implements Metrics {
+
+	public static final Metric TEST_DURATION_P50 = //
+	new Metric.Builder("test_duration_p50", "Test duration (median)", Metric.ValueType.MILLISEC) //
+	        .setDescription("The median duration of the test cases.") //
+	        .setDirection(Metric.DIRECTION_WORST) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .create();
+
+	public static final Metric TEST_DURATION_P90 = //
+	new Metric.Builder("test_duration_p90", "Test duration (90th percentile)", Metric.ValueType.MILLISEC) //
+	        .setDescription("The duration under which 90% of the test cases run.") //
+	        .setDirection(Metric.DIRECTION_WORST) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .create();
+
+	public static final Metric TEST_DURATION_P99 = //
+	new Metric.Builder("test_duration_p99", "Test duration (99th percentile)", Metric.ValueType.MILLISEC) //
+	        .setDescription("The duration under which 99% of the test cases run.") //
+	        .setDirection(Metric.DIRECTION_WORST) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .create();
+
+	public static final Metric TEST_DURATION_MAX = //
+	new Metric.Builder("test_duration_max", "Test duration (maximum)", Metric.ValueType.MILLISEC) //
+	        .setDescription("The duration of the slowest test case.") //
+	        .setDirection(Metric.DIRECTION_WORST) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .create();
+
+	public static final Metric SLOWEST_TESTS = //
+	new Metric.Builder("slowest_tests", "Slowest tests", Metric.ValueType.DATA) //
+	        .setDescription("The slowest test cases with their duration in milliseconds.") //
+	        .setDirection(Metric.DIRECTION_NONE) //
+	        .setDomain(CoreMetrics.DOMAIN_TESTS) //
+	        .setQualitative(false) //
+	        .create();
+
+	@Override
+	public List<Metric> getMetrics() {
+		return Arrays.asList(TEST_DURATION_P50, TEST_DURATION_P90, TEST_DURATION_P99, TEST_DURATION_MAX,
+		        SLOWEST_TESTS);
+	}
+}
@@ -0,0 +1,35 @@
+package com.thalesgroup.sonar.plugins.tusar.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metrics;
+import org.sonar.api.measures.SumChildValuesFormula;
+
+public class ViolationMetrics implements Metrics {
+
+	public static final Metric DUPLICATED_VIOLATIONS = //
+	new Metric.Builder("duplicated_violations", "Duplicated violations", Metric.ValueType.INT) //
+	        .setDescription("The number of violations discarded as having the same file, rule and line as another.") //
+	        .setDirection(Metric.DIRECTION_WORST) //
+	        .setDomain(CoreMetrics.DOMAIN_ISSUES) //
+	        .setQualitative(false) //
+	        .setFormula(new SumChildValuesFormula(false)) //
+	        .create();
+
+	public static final Metric CAPPED_VIOLATIONS = //
+	new Metric.Builder("capped_violations", "Capped violations", Metric.ValueType.INT) //
+	        .setDescription("The number of violations discarded by the per file or per rule limits.") //
+	        .setDirection(Metric.DIRECTION_WORST) //
+	        .setDomain(CoreMetrics.DOMAIN_ISSUES) //
+	        .setQualitative(false) //
+	        .setFormula(new SumChildValuesFormula(false)) //
+	        .create();
+
+	@Override
+	public List<Metric> getMetrics() {
+		return Arrays.asList(DUPLICATED_VIOLATIONS, CAPPED_VIOLATIONS);
+	}
+}
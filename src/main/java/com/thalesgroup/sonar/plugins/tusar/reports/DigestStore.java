@@ -0,0 +1,429 @@
+package com.thalesgroup.sonar.plugins.tusar.reports;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
+
+/**
+ * Keep, from one analysis to the next, a digest of the TUSAR content of each
+ * resource (per report and per section) along with the data computed from it.
+ * When the content has not changed, the data can be reused as is instead of
+ * being computed again.
+ *
+ * Only the entries used (or added) during an analysis are kept: they are
+ * written as they come into a temporary file, which replaces the store at the
+ * end of the analysis, instead of being held in memory meanwhile. A previous
+ * entry is released once reused. Note that reusing an entry only saves the
+ * building of its data: the content still has to be walked over to compute
+ * its digest.
+ *
+ * The whole store is discarded when it can't be read, when its format or the
+ * plugin version changes or when any TUSAR setting changes (since they could
+ * alter the computed data). The batch settings are checked when the store is
+ * loaded, the effective module settings (including the ones set through the
+ * UI) once known by the sensors.
+ */
+public class DigestStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(DigestStore.class);
+
+	private static final int MAGIC = 0x54555352;
+
+	private static final int FORMAT_VERSION = 6;
+
+	private static final String SETTINGS_PREFIX = "sonar.tusar.";
+
+	/**
+	 * Written by the SonarQube packaging plugin into the plugin manifest.
+	 */
+	private static final String PLUGIN_VERSION_ATTRIBUTE = "Plugin-Version";
+
+	private static final String PLUGIN_VERSION = findPluginVersion();
+
+	private static class Entry {
+
+		private final String digest;
+
+		private final String[] fields;
+
+		private Entry(String digest, String[] fields) {
+			this.digest = digest;
+			this.fields = fields;
+		}
+	}
+
+	/**
+	 * Incrementally compute the digest of some content.
+	 */
+	public static class Digest {
+
+		private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+		private final MessageDigest messageDigest;
+
+		private byte[] buffer = new byte[256];
+
+		private Digest() {
+			try {
+				messageDigest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("No MD5 implementation available", e);
+			}
+		}
+
+		public Digest add(String value) {
+			if (value == null) {
+				messageDigest.update((byte) 1);
+			} else {
+				int length = value.length();
+				if (buffer.length < 2 * length) {
+					buffer = new byte[2 * length];
+				}
+				for (int i = 0; i < length; ++i) {
+					char c = value.charAt(i);
+					buffer[2 * i] = (byte) (c >> 8);
+					buffer[2 * i + 1] = (byte) c;
+				}
+				messageDigest.update(buffer, 0, 2 * length);
+				messageDigest.update((byte) 0);
+			}
+			return this;
+		}
+
+		public Digest add(int value) {
+			messageDigest.update((byte) (value >> 24));
+			messageDigest.update((byte) (value >> 16));
+			messageDigest.update((byte) (value >> 8));
+			messageDigest.update((byte) value);
+			return this;
+		}
+
+		/**
+		 * Return the digest and reset the computation.
+		 */
+		public String finish() {
+			byte[] bytes = messageDigest.digest();
+			char[] hex = new char[2 * bytes.length];
+			for (int i = 0; i < bytes.length; ++i) {
+				hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+				hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+			}
+			return new String(hex);
+		}
+	}
+
+	private final File file;
+
+	/**
+	 * Of the plugin version and of the batch settings.
+	 */
+	private final String fingerprint;
+
+	/**
+	 * Of the module settings which were in effect for the previous entries.
+	 */
+	private String previousModuleFingerprint = "";
+
+	/**
+	 * Null until the module settings are known.
+	 */
+	private String moduleFingerprint;
+
+	private final Map<String, Entry> previousEntries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Into the temporary file, opened on the first entry used (or added).
+	 */
+	private DataOutputStream output;
+
+	private int writtenCount;
+
+	/**
+	 * Once an entry could not be written, the store can only be discarded.
+	 */
+	private boolean writeFailed;
+
+	/**
+	 * A store which never reuses anything.
+	 */
+	public static DigestStore disabled() {
+		return new DigestStore(null, null);
+	}
+
+	public static DigestStore load(File file, Settings batchSettings) {
+		DigestStore store = new DigestStore(file, computeFingerprint(batchSettings, PLUGIN_VERSION));
+		if (file.exists()) {
+			try {
+				store.read();
+				logger.debug("Loaded {} TUSAR digests from '{}'", store.previousEntries.size(), file);
+			} catch (IOException e) {
+				store.previousEntries.clear();
+				logger.warn("Discarding the unreadable TUSAR digest store '{}': {}", file, e.getMessage());
+			}
+		}
+		return store;
+	}
+
+	private DigestStore(File file, String fingerprint) {
+		this.file = file;
+		this.fingerprint = fingerprint;
+	}
+
+	public boolean isEnabled() {
+		return file != null;
+	}
+
+	/**
+	 * Discard the previous entries if the effective module settings have
+	 * changed since the previous analysis. Called by each sensor, the entries
+	 * already reused by the report preprocessing only depending on the batch
+	 * settings.
+	 */
+	public synchronized void checkModuleSettings(Settings moduleSettings) {
+		if (!isEnabled()) {
+			return;
+		}
+		String newModuleFingerprint = computeFingerprint(moduleSettings, "");
+		String reference = moduleFingerprint != null ? moduleFingerprint : previousModuleFingerprint;
+		if (!newModuleFingerprint.equals(reference) && !previousEntries.isEmpty()) {
+			logger.info("TUSAR module settings have changed, discarding the previous digests");
+			previousEntries.clear();
+		}
+		moduleFingerprint = newModuleFingerprint;
+	}
+
+	public Digest newDigest() {
+		return new Digest();
+	}
+
+	/**
+	 * The digest is expected to be computed over the whole content, so a hit
+	 * only spares the caller the building of the data.
+	 * 
+	 * @return The data previously stored for the same content or null if the
+	 *         content has changed (or was unknown).
+	 */
+	public String[] reuse(String section, String report, String path, String digest) {
+		if (isEnabled()) {
+			String key = key(section, report, path);
+			Entry entry = previousEntries.get(key);
+			if (entry != null && entry.digest.equals(digest)) {
+				previousEntries.remove(key);
+				write(key, entry);
+				return entry.fields;
+			}
+		}
+		return null;
+	}
+
+	public void store(String section, String report, String path, String digest, String... fields) {
+		if (isEnabled()) {
+			write(key(section, report, path), new Entry(digest, fields));
+		}
+	}
+
+	public synchronized void save() {
+		if (isEnabled()) {
+			File tmpFile = getTmpFile();
+			try {
+				if (writeFailed) {
+					throw new IOException("Some digests could not be written into: " + tmpFile);
+				}
+				if (output == null) {
+					output = open(tmpFile);
+				}
+				output.writeBoolean(false);
+				output.writeUTF(moduleFingerprint != null ? moduleFingerprint : previousModuleFingerprint);
+				output.close();
+				output = null;
+				if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+					throw new IOException("Cannot replace: " + file);
+				}
+				logger.debug("Saved {} TUSAR digests into '{}'", writtenCount, file);
+			} catch (IOException e) {
+				logger.error("When saving the TUSAR digest store", e);
+				closeOutput();
+				tmpFile.delete();
+				// Better no store than an outdated one.
+				file.delete();
+			}
+		}
+	}
+
+	private File getTmpFile() {
+		return new File(file.getPath() + ".tmp");
+	}
+
+	private void read() throws IOException {
+		DataInputStream input = new DataInputStream(new GZIPInputStream(new BufferedInputStream(
+		        new FileInputStream(file))));
+		try {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+				throw new IOException("unknown format");
+			}
+			if (!fingerprint.equals(input.readUTF())) {
+				logger.info("TUSAR plugin version or settings have changed, discarding the previous digests");
+				return;
+			}
+			while (input.readBoolean()) {
+				String key = readString(input);
+				String digest = readString(input);
+				String[] fields = new String[input.readInt()];
+				for (int i = 0; i < fields.length; ++i) {
+					fields[i] = readString(input);
+				}
+				previousEntries.put(key, new Entry(digest, fields));
+			}
+			previousModuleFingerprint = input.readUTF();
+		} finally {
+			input.close();
+		}
+	}
+
+	private synchronized void write(String key, Entry entry) {
+		if (writeFailed) {
+			return;
+		}
+		try {
+			if (output == null) {
+				output = open(getTmpFile());
+			}
+			output.writeBoolean(true);
+			writeString(output, key);
+			writeString(output, entry.digest);
+			output.writeInt(entry.fields.length);
+			for (String field : entry.fields) {
+				writeString(output, field);
+			}
+			++writtenCount;
+		} catch (IOException e) {
+			logger.error("When writing the TUSAR digest store", e);
+			writeFailed = true;
+			closeOutput();
+		}
+	}
+
+	private DataOutputStream open(File target) throws IOException {
+		File parentFile = target.getParentFile();
+		if (!parentFile.exists() && !parentFile.mkdirs()) {
+			throw new IOException("Cannot create directory: " + parentFile);
+		}
+		DataOutputStream newOutput = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(
+		        new FileOutputStream(target))));
+		newOutput.writeInt(MAGIC);
+		newOutput.writeInt(FORMAT_VERSION);
+		newOutput.writeUTF(fingerprint);
+		return newOutput;
+	}
+
+	private void closeOutput() {
+		if (output != null) {
+			try {
+				output.close();
+			} catch (IOException e) {
+				logger.debug("When closing the TUSAR digest store", e);
+			}
+			output = null;
+		}
+	}
+
+	/**
+	 * Unlike {@link DataOutputStream#writeUTF(String)}, no 64 KB limit.
+	 */
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes("UTF-8");
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		} else {
+			byte[] bytes = new byte[length];
+			input.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+	}
+
+	private static String key(String section, String report, String path) {
+		return new StringBuilder(section).append('\0').append(report).append('\0').append(path).toString();
+	}
+
+	private static String computeFingerprint(Settings settings, String pluginVersion) {
+		SortedMap<String, String> tusarSettings = new TreeMap<String, String>();
+		for (Map.Entry<String, String> entry : settings.getProperties().entrySet()) {
+			if (entry.getKey().startsWith(SETTINGS_PREFIX)) {
+				tusarSettings.put(entry.getKey(), entry.getValue());
+			}
+		}
+		Digest digest = new Digest();
+		digest.add(pluginVersion);
+		for (Map.Entry<String, String> entry : tusarSettings.entrySet()) {
+			digest.add(entry.getKey()).add(entry.getValue());
+		}
+		return digest.finish();
+	}
+
+	/**
+	 * @return The version found in the manifest of the JAR containing this
+	 *         class, or an empty string if not packaged (when testing).
+	 */
+	private static String findPluginVersion() {
+		try {
+			CodeSource codeSource = DigestStore.class.getProtectionDomain().getCodeSource();
+			if (codeSource != null && codeSource.getLocation() != null) {
+				File location = new File(codeSource.getLocation().toURI());
+				if (location.isFile()) {
+					JarFile jarFile = new JarFile(location);
+					try {
+						Manifest manifest = jarFile.getManifest();
+						String version = manifest != null ? manifest.getMainAttributes().getValue(
+						        PLUGIN_VERSION_ATTRIBUTE) : null;
+						if (version != null) {
+							return version;
+						}
+					} finally {
+						jarFile.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot read the TUSAR plugin version: {}", e.getMessage());
+		} catch (URISyntaxException e) {
+			logger.warn("Cannot read the TUSAR plugin version: {}", e.getMessage());
+		}
+		return "";
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(file);
+	}
+}
@@ -12,11 +12,22 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.jenkinsci.lib.dtkit.util.converter.ConversionException;
@@ -80,6 +91,56 @@ public class ReportExtractor {
 	        .hidden() // Can't be set through the UI (and persisted in database)
 	        .build();
 
+	public static final PropertyDefinition TUSAR_INCREMENTAL_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.incremental")
+	        .subCategory("Reports")
+	        .name("Incremental injection")
+	        .description(
+	                "Keep a digest of the TUSAR content of each resource from one analysis to the next "
+	                        + "in order to reuse the data computed for unchanged resources.") //
+	        .type(PropertyType.BOOLEAN) //
+	        .hidden() // Can't be set through the UI (and persisted in database)
+	        .build();
+
+	public static final PropertyDefinition TUSAR_PREPROCESSING_PARALLELISM_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.preprocessingParallelism")
+	        .subCategory("Performance")
+	        .name("Preprocessing parallelism")
+	        .description(
+	                "Number of background threads loading the TUSAR reports, each report being parsed then reduced "
+	                        + "(test suites, coverage...) by a single thread while the analysis goes on. "
+	                        + "The parsing is done one report at a time whatever this number. "
+	                        + "Defaults to the number of available processors.") //
+	        .type(PropertyType.INTEGER) //
+	        .hidden() // Can't be set through the UI (and persisted in database)
+	        .build();
+
+	public static final PropertyDefinition TUSAR_DIGEST_STORE_DIR_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.digestStoreDir")
+	        .subCategory("Reports")
+	        .name("Digest store directory")
+	        .description(
+	                "Directory where the digests of the incremental injection are kept from one analysis to the next, "
+	                        + "absolute or relative to the project's base directory. Defaults to the build "
+	                        + "directory when known (such as the Maven target directory).") //
+	        .type(PropertyType.STRING) //
+	        .hidden() // Can't be set through the UI (and persisted in database)
+	        .build();
+
+	/*
+	 * Not located into the SonarQube working directory, since the latter is
+	 * cleaned before each analysis.
+	 */
+	private static final String DIGEST_STORE_DIR = "tusar-cache";
+
+	/**
+	 * Without build directory (nor explicit setting), the former location in
+	 * the base directory.
+	 */
+	private static final String DEFAULT_DIGEST_STORE_DIR = ".tusar-cache";
+
+	private static final String DIGEST_STORE_EXT = ".digests";
+
 	/*
 	 * This folder is required to be relative to the base directory. It would be
 	 * better to use a generated name which doesn't exist, but keeping it the
@@ -89,6 +150,12 @@ public class ReportExtractor {
 
 	private static final String PLACEHOLDER_EXT = ".placeholder";
 
+	/**
+	 * Nothing tells the shared convertor (and the unmarshaller it may cache)
+	 * is thread-safe, so the reports are parsed one at a time.
+	 */
+	private static final Object PARSING_LOCK = new Object();
+
 	private static Pattern ILLEGAL_FILE_CHARACTER = Pattern.compile("[^A-Za-z0-9()\\\\[\\\\]{}°%$@#^!,_+\\\\-\\\\='.]");
 
 	public static class Report {
@@ -97,6 +164,12 @@ public class ReportExtractor {
 
 		public final Tusar model;
 
+		/**
+		 * The (possibly still running) results of the registered
+		 * preprocessors.
+		 */
+		private final Map<ReportPreprocessor<?>, RunnableFuture<?>> preprocessings = new ConcurrentHashMap<ReportPreprocessor<?>, RunnableFuture<?>>();
+
 		public Report(File location, Tusar Tusar) {
 			this.location = location;
 			this.model = Tusar;
@@ -115,10 +188,27 @@ public class ReportExtractor {
 		extractors.add(extractor);
 	}
 
+	protected static Collection<ReportPreprocessor<?>> preprocessors = new LinkedHashSet<ReportPreprocessor<?>>();
+
+	/**
+	 * Same as above, preprocessors need to be known before the sensors are
+	 * instantiated to be able to do their job in background while SonarQube
+	 * is indexing the files.
+	 */
+	public static void registerReportPreprocessor(ReportPreprocessor<?> preprocessor) {
+		logger.debug("Register static report preprocessor: {}", preprocessor.getClass());
+		preprocessors.add(preprocessor);
+	}
+
 	private static ReportExtractor rootInstance;
 
+	/**
+	 * Create the extractors of the project and its modules, their reports
+	 * being loaded (and their referenced paths resolved) on return.
+	 */
 	public static ReportExtractor createRootInstance(ProjectDefinition projectDefinition, Settings batchSettings) {
 		rootInstance = new ReportExtractor(projectDefinition, batchSettings);
+		rootInstance.load();
 		return rootInstance;
 	}
 
@@ -154,8 +244,33 @@ public class ReportExtractor {
 
 	private Collection<Report> reports;
 
+	/*
+	 * What is needed to load the reports in background, then resolve the
+	 * paths they reference.
+	 */
+
+	private List<File> reportFiles;
+
+	private List<Future<Report>> loadings = new ArrayList<Future<Report>>();
+
+	private File baseDir;
+
+	private String[] sourceDirs;
+
+	private String[] testDirs;
+
 	private List<ReportExtractor> moduleReportExtractors = new LinkedList<ReportExtractor>();
 
+	private final Settings batchSettings;
+
+	private final DigestStore digestStore;
+
+	/**
+	 * Results of the sensors for this project (sub-projects included), for
+	 * the parent project which is analysed afterwards.
+	 */
+	private final Map<String, Object> analysisResults = new ConcurrentHashMap<String, Object>();
+
 	/**
 	 * File here means Java File, a file which is a file or a file which is a
 	 * directory. I do know that everything is a file on Unix, but still... we
@@ -173,10 +288,11 @@ public class ReportExtractor {
 	 */
 	private ReportExtractor(ProjectDefinition projectDefinition, Settings batchSettings) {
 		key = projectDefinition.getKey();
+		this.batchSettings = batchSettings;
 
-		File baseDir = projectDefinition.getBaseDir();
-		String[] sourceDirs = projectDefinition.getSourceDirs().toArray(new String[0]);
-		String[] testDirs = projectDefinition.getTestDirs().toArray(new String[0]);
+		baseDir = projectDefinition.getBaseDir();
+		sourceDirs = projectDefinition.getSourceDirs().toArray(new String[0]);
+		testDirs = projectDefinition.getTestDirs().toArray(new String[0]);
 
 		/*
 		 * Note: "default" values for undefined properties are false and empty
@@ -185,6 +301,7 @@ public class ReportExtractor {
 		String prefix = getPrefix(projectDefinition, batchSettings);
 		String[] reportsPaths = splitAgain(batchSettings.getStringArray(prefix + TUSAR_REPORTS_PATHS_PROPERTY.key()));
 		boolean usePlaceholderResources = batchSettings.getBoolean(prefix + TUSAR_USE_PLACEHOLDER_PROPERTY.key());
+		boolean incremental = batchSettings.getBoolean(prefix + TUSAR_INCREMENTAL_PROPERTY.key());
 
 		if (logger.isTraceEnabled()) {
 			StringBuilder message = new StringBuilder("-------------  Project properties\n");
@@ -220,6 +337,14 @@ public class ReportExtractor {
 			}
 		}
 
+		if (incremental) {
+			String name = ILLEGAL_FILE_CHARACTER.matcher(key).replaceAll("_") + DIGEST_STORE_EXT;
+			File digestStoreDir = getDigestStoreDir(projectDefinition, batchSettings, prefix);
+			digestStore = DigestStore.load(new File(digestStoreDir, name), batchSettings);
+		} else {
+			digestStore = DigestStore.disabled();
+		}
+
 		if (logger.isDebugEnabled()) {
 			StringBuilder message = new StringBuilder("-------------  Extracting TUSAR reports\n");
 			message.append("\tprojectKey:              ").append(key).append('\n');
@@ -227,10 +352,14 @@ public class ReportExtractor {
 			message.append("\tsourceDirs:              ").append(Arrays.toString(sourceDirs)).append('\n');
 			message.append("\ttestDirs:                ").append(Arrays.toString(testDirs)).append('\n');
 			message.append("\treportsPaths:            ").append(Arrays.toString(reportsPaths)).append('\n');
-			message.append("\tusePlaceholderResources: ").append(usePlaceholderResources);
+			message.append("\tusePlaceholderResources: ").append(usePlaceholderResources).append('\n');
+			message.append("\tincremental:             ").append(incremental);
+			if (incremental) {
+				message.append('\n').append("\tdigestStore:             ").append(digestStore);
+			}
 			logger.debug(message.toString());
 		}
-		init(baseDir, sourceDirs, testDirs, reportsPaths);
+		reportFiles = findReports(baseDir, reportsPaths);
 
 		for (ProjectDefinition subProjectDefinition : projectDefinition.getSubProjects()) {
 			ReportExtractor moduleReportExtractor = new ReportExtractor(subProjectDefinition, batchSettings);
@@ -243,11 +372,17 @@ public class ReportExtractor {
 	 */
 	ReportExtractor(File baseDir, String[] sourceDirs, String[] testDirs, String[] reportsPaths) {
 		key = null;
+		batchSettings = new Settings();
+		digestStore = DigestStore.disabled();
 		init(baseDir, sourceDirs, testDirs, reportsPaths);
 	}
 
 	private void init(File baseDir, String[] sourceDirs, String[] testDirs, String[] reportsPaths) {
 		reports = loadReports(baseDir, reportsPaths);
+		resolve(baseDir, sourceDirs, testDirs);
+	}
+
+	private void resolve(File baseDir, String[] sourceDirs, String[] testDirs) {
 		if (reports.isEmpty()) {
 			logger.info("No TUSAR reports found for project: {}", key);
 		}
@@ -296,12 +431,18 @@ public class ReportExtractor {
 		}
 
 		Map<String, File> canonicalRoots = new HashMap<String, File>();
-		for (String sourceDir : allSourceDirs) {
+		List<File> canonicalTestRoots = new ArrayList<File>(testDirs.length);
+		for (int i = 0; i < allSourceDirs.size(); ++i) {
+			String sourceDir = allSourceDirs.get(i);
 			File dir = getAbsolutePath(baseDir, sourceDir);
 			if (dir.exists() && dir.isDirectory()) {
 				if (isContainedInBaseDir(dir, baseDir)) {
 					try {
 						canonicalRoots.put(dir.getCanonicalPath(), dir.getCanonicalFile());
+						// The test directories come last.
+						if (i >= sourceDirs.length) {
+							canonicalTestRoots.add(dir.getCanonicalFile());
+						}
 					} catch (IOException e) {
 						throw new IllegalArgumentException(
 						        "Provided source directory does exist but can't be canonized (removed meanwhile?): "
@@ -328,6 +469,7 @@ public class ReportExtractor {
 			}
 		}
 
+		TestFileIndex testFileIndex = null;
 		for (Report report : reports) {
 			for (ReferenceExtractor extractor : extractors) {
 				for (String path : extractor.getReferencedResourcePaths(report.model)) {
@@ -354,6 +496,13 @@ public class ReportExtractor {
 						}
 						if (root == null) {
 							file = null;
+							if (extractor instanceof TestSuiteReferenceExtractor) {
+								// Built once, on the first unresolved test suite.
+								if (testFileIndex == null) {
+									testFileIndex = new TestFileIndex(canonicalTestRoots);
+								}
+								file = testFileIndex.find(path);
+							}
 						}
 						logger.trace("In TUSAR report '{}', path '{}' has been resolved to '{}' against root '{}'.",
 						        report.location, path, file, root);
@@ -439,6 +588,177 @@ public class ReportExtractor {
 		}
 	}
 
+	/**
+	 * Load the reports of this project and its modules with background
+	 * threads, each report being parsed then reduced by the registered
+	 * preprocessors as a single task. The parsing is serialized, only the
+	 * reductions run in parallel. Only the parsing is waited for, the
+	 * paths referenced by the reports having to be resolved before SonarQube
+	 * indexes the files, while the reduction goes on with the analysis. The
+	 * per report results are merged by the sensors in the reports order,
+	 * whatever the order they were computed in.
+	 */
+	private void load() {
+		int parallelism = batchSettings.getInt(TUSAR_PREPROCESSING_PARALLELISM_PROPERTY.key());
+		if (parallelism <= 0) {
+			parallelism = Runtime.getRuntime().availableProcessors();
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "tusar-preprocessing-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduleLoading(executor);
+		// Already submitted tasks will still be executed.
+		executor.shutdown();
+		resolveLoaded();
+	}
+
+	private void scheduleLoading(ExecutorService executor) {
+		// The modules are analysed first.
+		for (ReportExtractor moduleReportExtractor : moduleReportExtractors) {
+			moduleReportExtractor.scheduleLoading(executor);
+		}
+		for (final File reportFile : reportFiles) {
+			final FutureTask<Report> loading = new FutureTask<Report>(new Callable<Report>() {
+
+				@Override
+				public Report call() throws Exception {
+					Report report = loadReport(reportFile);
+					for (ReportPreprocessor<?> preprocessor : preprocessors) {
+						report.preprocessings.put(preprocessor, newPreprocessing(report, preprocessor));
+					}
+					return report;
+				}
+			});
+			loadings.add(loading);
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					loading.run();
+					try {
+						Report report = loading.get();
+						for (ReportPreprocessor<?> preprocessor : preprocessors) {
+							// Nothing to do if a sensor already asked for it.
+							report.preprocessings.get(preprocessor).run();
+						}
+					} catch (ExecutionException e) {
+						// Reported when the loaded reports are resolved.
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+	}
+
+	private void resolveLoaded() {
+		reports = new LinkedList<Report>();
+		for (Future<Report> loading : loadings) {
+			try {
+				reports.add(loading.get());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new ConversionException(cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for TUSAR report loading", e);
+			}
+		}
+		loadings = null;
+		resolve(baseDir, sourceDirs, testDirs);
+		for (ReportExtractor moduleReportExtractor : moduleReportExtractors) {
+			moduleReportExtractor.resolveLoaded();
+		}
+	}
+
+	private <T> RunnableFuture<T> newPreprocessing(final Report report, final ReportPreprocessor<T> preprocessor) {
+		return new FutureTask<T>(new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				logger.debug("Preprocessing report '{}' with {}", report.location, preprocessor.getClass());
+				return preprocessor.preprocess(report, batchSettings, digestStore);
+			}
+		});
+	}
+
+	/**
+	 * Wait for the result of a preprocessor on a report, executing it right
+	 * away if no background thread has started it yet.
+	 * 
+	 * @return The preprocessing result or null if it failed.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getPreprocessed(Report report, ReportPreprocessor<T> preprocessor) {
+		RunnableFuture<T> preprocessing = (RunnableFuture<T>) report.preprocessings.get(preprocessor);
+		if (preprocessing == null) {
+			preprocessing = newPreprocessing(report, preprocessor);
+			report.preprocessings.put(preprocessor, preprocessing);
+		}
+		// Nothing to do if already started.
+		preprocessing.run();
+		try {
+			return preprocessing.get();
+		} catch (ExecutionException e) {
+			logger.error("Failed to preprocess TUSAR report '" + report.location + "'", e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for TUSAR report preprocessing", e);
+		}
+	}
+
+	public DigestStore getDigestStore() {
+		return digestStore;
+	}
+
+	/**
+	 * @return The settings given to the report preprocessors.
+	 */
+	public Settings getBatchSettings() {
+		return batchSettings;
+	}
+
+	/**
+	 * Save the digests of this project (sub-projects not included) for the
+	 * next analysis.
+	 */
+	public void saveDigests() {
+		digestStore.save();
+	}
+
+	public void publishAnalysisResult(String name, Object result) {
+		analysisResults.put(name, result);
+	}
+
+	/**
+	 * @return The results published by the direct sub-projects, which are
+	 *         analysed before this project.
+	 */
+	public <T> List<T> getSubProjectAnalysisResults(String name, Class<T> type) {
+		List<T> results = new ArrayList<T>();
+		for (ReportExtractor moduleReportExtractor : moduleReportExtractors) {
+			Object result = moduleReportExtractor.analysisResults.get(name);
+			if (result != null) {
+				results.add(type.cast(result));
+			}
+		}
+		return results;
+	}
+
 	/**
 	 * Resolves the file for a path which need to be:
 	 * <ul>
@@ -460,21 +780,35 @@ public class ReportExtractor {
 		return reports;
 	}
 
+	private List<File> findReports(File baseDir, String[] reportsPaths) {
+		List<File> xmlReports = getXmlReports(getReportDirs(baseDir, reportsPaths));
+		for (File xmlReport : xmlReports) {
+			logger.info("For project '{}', found TUSAR report: '{}'", key, xmlReport);
+		}
+		return xmlReports;
+	}
+
 	private Collection<Report> loadReports(File baseDir, String[] reportsPaths) {
 		LinkedList<Report> reports = new LinkedList<Report>();
-		for (File xmlReport : getXmlReports(getReportDirs(baseDir, reportsPaths))) {
-			logger.info("For project '{}', found TUSAR report: '{}'", key, xmlReport);
-			try {
-				URL url = xmlReport.toURI().toURL();
-				Tusar tusar = Convertor.getInstance().upgradeToLastVersionModel(url);
-				reports.add(new Report(xmlReport, tusar));
-			} catch (MalformedURLException e) {
-				throw new ConversionException(e);
-			}
+		for (File xmlReport : findReports(baseDir, reportsPaths)) {
+			reports.add(loadReport(xmlReport));
 		}
 		return reports;
 	}
 
+	private static Report loadReport(File xmlReport) {
+		try {
+			URL url = xmlReport.toURI().toURL();
+			Tusar tusar;
+			synchronized (PARSING_LOCK) {
+				tusar = Convertor.getInstance().upgradeToLastVersionModel(url);
+			}
+			return new Report(xmlReport, tusar);
+		} catch (MalformedURLException e) {
+			throw new ConversionException(e);
+		}
+	}
+
 	private static List<File> getXmlReports(List<? extends File> reportsDirs) {
 		List<File> allXmlReports = new ArrayList<File>();
 		for (File reportDir : reportsDirs) {
@@ -612,6 +946,24 @@ public class ReportExtractor {
 		}
 	}
 
+	/**
+	 * The module setting, else the project one, else the build directory.
+	 */
+	private static File getDigestStoreDir(ProjectDefinition projectDefinition, Settings batchSettings, String prefix) {
+		String path = batchSettings.getString(prefix + TUSAR_DIGEST_STORE_DIR_PROPERTY.key());
+		if (path == null) {
+			path = batchSettings.getString(TUSAR_DIGEST_STORE_DIR_PROPERTY.key());
+		}
+		if (path != null) {
+			File dir = new File(path);
+			return dir.isAbsolute() ? dir : new File(projectDefinition.getBaseDir(), path);
+		} else if (projectDefinition.getBuildDir() != null) {
+			return new File(projectDefinition.getBuildDir(), DIGEST_STORE_DIR);
+		} else {
+			return new File(projectDefinition.getBaseDir(), DEFAULT_DIGEST_STORE_DIR);
+		}
+	}
+
 	private static String[] splitAgain(String[] multiValues) {
 		List<String> allValues = new LinkedList<String>();
 		if (multiValues != null) {
@@ -0,0 +1,24 @@
+package com.thalesgroup.sonar.plugins.tusar.reports;
+
+import org.sonar.api.config.Settings;
+
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+
+/**
+ * Compute, from a TUSAR report alone, data which will be later attached to
+ * resources by a sensor. Since the resources are not yet indexed when the
+ * preprocessing takes place, the resulting data can only refer to resources
+ * using the paths found in the report.
+ */
+public interface ReportPreprocessor<T> {
+
+	/**
+	 * Could be executed by a background thread and, as such, shall not rely on
+	 * anything else than the provided arguments.
+	 * 
+	 * @param digests
+	 *            Used to skip the computation for content which has not
+	 *            changed since the previous analysis.
+	 */
+	T preprocess(Report report, Settings batchSettings, DigestStore digests) throws Exception;
+}
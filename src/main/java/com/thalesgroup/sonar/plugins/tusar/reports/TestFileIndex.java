@@ -0,0 +1,105 @@
+package com.thalesgroup.sonar.plugins.tusar.reports;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index the files of the test directories by the names test suites are
+ * usually given, so that a test suite name is resolved by a single lookup.
+ * For a file "com/acme/FooTest.java" of a test directory, the names are:
+ * <ul>
+ * <li>its relative path: "com/acme/FooTest.java",</li>
+ * <li>its relative path without extension: "com/acme/FooTest",</li>
+ * <li>its dotted name: "com.acme.FooTest",</li>
+ * <li>its base name without extension: "FooTest".</li>
+ * </ul>
+ * A name shared by several files is ambiguous and resolves to nothing, the
+ * candidates being reported the first time the name is looked up.
+ */
+class TestFileIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(TestFileIndex.class);
+
+	private final Map<String, File> filesByName = new HashMap<String, File>();
+
+	/**
+	 * The candidates of the ambiguous names not reported yet.
+	 */
+	private final Map<String, Set<File>> ambiguousNames = new HashMap<String, Set<File>>();
+
+	TestFileIndex(Collection<File> testRoots) {
+		for (File root : testRoots) {
+			index(root, "");
+		}
+		logger.debug("Indexed {} test file names, {} of them being ambiguous", filesByName.size(),
+		        ambiguousNames.size());
+	}
+
+	/**
+	 * @return The test file or null if the name is unknown or ambiguous.
+	 */
+	File find(String name) {
+		String normalizedName = name.replace('\\', '/');
+		// Nested classes are reported within their enclosing class file.
+		int nested = normalizedName.indexOf('$');
+		if (nested > 0) {
+			normalizedName = normalizedName.substring(0, nested);
+		}
+		File file = filesByName.get(normalizedName);
+		if (file == null) {
+			Set<File> candidates = ambiguousNames.remove(normalizedName);
+			if (candidates != null) {
+				logger.warn("Test suite '{}' matches several test files and will be ignored: {}", name, candidates);
+			}
+		}
+		return file;
+	}
+
+	private void index(File dir, String prefix) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String relativePath = prefix + file.getName();
+			if (file.isDirectory()) {
+				if (!file.isHidden()) {
+					index(file, relativePath + '/');
+				}
+			} else {
+				String fileName = file.getName();
+				int suffixIndex = fileName.lastIndexOf('.');
+				String baseName = suffixIndex > 0 ? fileName.substring(0, suffixIndex) : fileName;
+				String pathWithoutExtension = prefix + baseName;
+
+				put(relativePath, file);
+				put(pathWithoutExtension, file);
+				put(pathWithoutExtension.replace('/', '.'), file);
+				put(baseName, file);
+			}
+		}
+	}
+
+	private void put(String name, File file) {
+		Set<File> candidates = ambiguousNames.get(name);
+		if (candidates != null) {
+			candidates.add(file);
+			return;
+		}
+		File previous = filesByName.put(name, file);
+		if (previous != null && !previous.equals(file)) {
+			filesByName.remove(name);
+			candidates = new LinkedHashSet<File>();
+			candidates.add(previous);
+			candidates.add(file);
+			ambiguousNames.put(name, candidates);
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package com.thalesgroup.sonar.plugins.tusar.reports;
+
+/**
+ * A {@link ReferenceExtractor} whose references are test suite names, which
+ * are often not paths but class names (such as "com.acme.FooTest") or paths
+ * without extension. The references which can't be resolved as paths are
+ * looked up by name among the files of the test directories.
+ */
+public interface TestSuiteReferenceExtractor extends ReferenceExtractor {
+}
@@ -3,6 +3,7 @@ package com.thalesgroup.sonar.plugins.tusar.sensors;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,8 +11,10 @@ import javax.script.ScriptException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.PropertyType;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
@@ -19,16 +22,40 @@ import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.measures.PersistenceMode;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Resource;
 
+import com.thalesgroup.sonar.plugins.tusar.reports.DigestStore;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReferenceExtractor;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportPreprocessor;
 
 public abstract class AbstractSensor implements Sensor {
 
 	static final Logger logger = LoggerFactory.getLogger(AbstractSensor.class);
 
+	public static final PropertyDefinition TUSAR_PARALLELISM_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.parallelism")
+	        .subCategory("Performance")
+	        .name("Parallelism")
+	        .description(
+	                "Number of worker threads used to compute the measures of each resource. "
+	                        + "Measures are still injected by the analysis thread and in the same order.") //
+	        .type(PropertyType.INTEGER) //
+	        .defaultValue("1") //
+	        .onQualifiers(Qualifiers.PROJECT, Qualifiers.MODULE) //
+	        .build();
+
+	/**
+	 * A pure computation of the measures of a single resource, which could be
+	 * executed outside of the analysis thread.
+	 */
+	public interface MeasuresComputation {
+
+		Collection<Measure> compute() throws Exception;
+	}
+
 	public static class Context {
 
 		// TODO Memory cost?
@@ -42,7 +69,13 @@ public abstract class AbstractSensor implements Sensor {
 
 		private Resource resource;
 
+		private final ResourcePipeline pipeline;
+
 		public Context(Project project, SensorContext sensorContext) {
+			this(project, sensorContext, 1);
+		}
+
+		public Context(Project project, SensorContext sensorContext, int parallelism) {
 			if (project == null) {
 				throw new IllegalArgumentException("No project defined");
 			}
@@ -51,6 +84,15 @@ public abstract class AbstractSensor implements Sensor {
 				throw new IllegalArgumentException("No sensor context defined");
 			}
 			this.sensorContext = sensorContext;
+			this.pipeline = new ResourcePipeline(parallelism, new ResourcePipeline.Sink() {
+
+				@Override
+				public void accept(Report report, Resource resource, Collection<Measure> measures) {
+					for (Measure measure : measures) {
+						injectMeasure(report, resource, measure);
+					}
+				}
+			});
 		}
 
 		public Context report(Report report) {
@@ -83,6 +125,48 @@ public abstract class AbstractSensor implements Sensor {
 			return getExtractor(project).getReports();
 		}
 
+		/**
+		 * @return The resources having received measures so far.
+		 */
+		public Collection<Resource> injectedResources() {
+			return injectedMeasures.keySet();
+		}
+
+		public DigestStore getDigestStore() {
+			return getExtractor(project).getDigestStore();
+		}
+
+		/**
+		 * Make a result available to the parent project, such as something
+		 * which can't be aggregated from the measures.
+		 */
+		public void publishAnalysisResult(String name, Object result) {
+			getExtractor(project).publishAnalysisResult(name, result);
+		}
+
+		public <T> List<T> getSubProjectAnalysisResults(String name, Class<T> type) {
+			return getExtractor(project).getSubProjectAnalysisResults(name, type);
+		}
+
+		/**
+		 * @return The settings given to the report preprocessors, to be used
+		 *         for the properties they read.
+		 */
+		public Settings getBatchSettings() {
+			return getExtractor(project).getBatchSettings();
+		}
+
+		/**
+		 * @return The result of the preprocessor for the current report or
+		 *         null if it failed.
+		 */
+		public <T> T getPreprocessed(ReportPreprocessor<T> preprocessor) {
+			if (report == null) {
+				throw new IllegalArgumentException("No report defined");
+			}
+			return getExtractor(project).getPreprocessed(report, preprocessor);
+		}
+
 		public Resource resolveResource(String type, String path) {
 			if (ReferenceExtractor.PROJECT_RESSOURCE_TYPE.equalsIgnoreCase(type)) {
 				return project;
@@ -116,6 +200,28 @@ public abstract class AbstractSensor implements Sensor {
 			}
 		}
 
+		/**
+		 * Schedule the computation of measures for the current report and
+		 * resource. The computed measures are injected in the scheduling
+		 * order, but not necessarily right away.
+		 */
+		public void injectMeasures(MeasuresComputation computation) {
+			if (report == null) {
+				throw new IllegalArgumentException("No report defined");
+			}
+			if (resource == null) {
+				throw new IllegalArgumentException("No resource defined");
+			}
+			pipeline.submit(report, resource, computation);
+		}
+
+		/**
+		 * Wait for every scheduled computation to be injected.
+		 */
+		public void flush() {
+			pipeline.flush();
+		}
+
 		public void injectMeasure(Measure measure) {
 			if (report == null) {
 				throw new IllegalArgumentException("No report defined");
@@ -123,7 +229,12 @@ public abstract class AbstractSensor implements Sensor {
 			if (resource == null) {
 				throw new IllegalArgumentException("No resource defined");
 			}
+			// Direct injections shall not overtake the scheduled ones.
+			pipeline.flush();
+			injectMeasure(report, resource, measure);
+		}
 
+		private void injectMeasure(Report report, Resource resource, Measure measure) {
 			Map<Report, Set<Measure>> measuresByReport = injectedMeasures.get(resource);
 			if (measuresByReport == null) {
 				measuresByReport = new HashMap<Report, Set<Measure>>();
@@ -161,6 +272,10 @@ public abstract class AbstractSensor implements Sensor {
 		this.metricFinder = metricFinder;
 	}
 
+	protected Settings getSettings() {
+		return settings;
+	}
+
 	@Override
 	public boolean shouldExecuteOnProject(Project project) {
 		return true;
@@ -168,8 +283,14 @@ public abstract class AbstractSensor implements Sensor {
 
 	@Override
 	public void analyse(Project project, SensorContext sensorContext) {
-		Context context = new Context(project, sensorContext);
-		internalAnalyse(context);
+		Context context = new Context(project, sensorContext, settings.getInt(TUSAR_PARALLELISM_PROPERTY.key()));
+		// Unlike the batch settings, the module ones are only known now.
+		context.getDigestStore().checkModuleSettings(settings);
+		try {
+			internalAnalyse(context);
+		} finally {
+			context.pipeline.shutdown();
+		}
 
 		PostProcessing postProcessing = null;
 		if (metricFinder != null) {
@@ -195,10 +316,19 @@ public abstract class AbstractSensor implements Sensor {
 				}
 			}
 		}
+
+		afterInjection(context);
 	}
 
 	protected abstract void internalAnalyse(Context context);
 
+	/**
+	 * Called once all the injected measures have been post-processed and
+	 * saved.
+	 */
+	protected void afterInjection(Context context) {
+	}
+
 	protected void saveMeasure(SensorContext context, Resource resource, Measure measure) {
 		Measure oldMeasure = context.getMeasure(resource, measure.getMetric());
 		Measure newMeasure;
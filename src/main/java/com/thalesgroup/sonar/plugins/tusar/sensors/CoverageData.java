@@ -0,0 +1,73 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The coverage data of a TUSAR report, ready to be attached to the resources
+ * once resolved.
+ */
+class CoverageData {
+
+	static class LineCoverage {
+
+		final String path;
+		final double lines;
+		final double coveredLines;
+		final String lineHitsData;
+
+		LineCoverage(String path, double lines, double coveredLines, String lineHitsData) {
+			this.path = path;
+			this.lines = lines;
+			this.coveredLines = coveredLines;
+			this.lineHitsData = lineHitsData;
+		}
+
+		LineCoverage(String path, String[] fields) {
+			this(path, Double.parseDouble(fields[0]), Double.parseDouble(fields[1]), fields[2]);
+		}
+
+		String[] toFields() {
+			return new String[] { Double.toString(lines), Double.toString(coveredLines), lineHitsData };
+		}
+	}
+
+	static class BranchCoverage {
+
+		final String path;
+		final double conditionsToCover;
+		final double uncoveredConditions;
+		final String conditionsByLineData;
+		final String coveredConditionsByLineData;
+		final String lineHitsData;
+
+		BranchCoverage(String path, double conditionsToCover, double uncoveredConditions,
+		        String conditionsByLineData, String coveredConditionsByLineData, String lineHitsData) {
+			this.path = path;
+			this.conditionsToCover = conditionsToCover;
+			this.uncoveredConditions = uncoveredConditions;
+			this.conditionsByLineData = conditionsByLineData;
+			this.coveredConditionsByLineData = coveredConditionsByLineData;
+			this.lineHitsData = lineHitsData;
+		}
+
+		BranchCoverage(String path, String[] fields) {
+			this(path, Double.parseDouble(fields[0]), Double.parseDouble(fields[1]), fields[2], fields[3], fields[4]);
+		}
+
+		String[] toFields() {
+			return new String[] { Double.toString(conditionsToCover), Double.toString(uncoveredConditions),
+			        conditionsByLineData, coveredConditionsByLineData, lineHitsData };
+		}
+	}
+
+	final List<LineCoverage> lineCoverages = new ArrayList<LineCoverage>();
+
+	final List<BranchCoverage> branchCoverages = new ArrayList<BranchCoverage>();
+
+	/**
+	 * Whether the coverage was left to the sensor, to be merged across
+	 * reports, in which case the lists are empty.
+	 */
+	boolean leftToMerge;
+}
@@ -3,17 +3,19 @@ package com.thalesgroup.sonar.plugins.tusar.sensors;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
-import org.sonar.api.batch.SensorContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.resources.Resource;
 
-import com.google.common.collect.Sets;
+import com.thalesgroup.sonar.plugins.tusar.reports.DigestStore;
 
 class DuplicationData {
 
+	private static final Logger logger = LoggerFactory.getLogger(DuplicationData.class);
+
 	public static class Part {
 
 		public final String key;
@@ -25,36 +27,75 @@ class DuplicationData {
 		}
 	}
 
+	/**
+	 * A duplicated block, the parts being shared by every member of the same
+	 * duplication set (the member itself being skipped).
+	 */
 	private static class XmlEntry {
 
 		private final String key;
 		private final int startLine;
 		private final int lines;
-		private Set<Part> parts;
+		private final List<Part> parts;
+		private final int self;
+		private final int report;
 
-		private XmlEntry(String key, int startLine, int lines, Set<Part> parts) {
+		private XmlEntry(String key, int startLine, int lines, List<Part> parts, int self, int report) {
 			this.key = key;
 			this.startLine = startLine;
 			this.lines = lines;
 			this.parts = parts;
+			this.self = self;
+			this.report = report;
 		}
 
-		@Override
-		public String toString() {
-			StringBuilder str = new StringBuilder();
-			str.append("<g>").append("<b s=\"").append(startLine).append("\" l=\"").append(lines).append("\" r=\"")
-			        .append(key).append("\" />");
-			for (Part ekey : parts) {
-				String targetStartLine = ekey.startLine;
-				str.append("<b s=\"").append(targetStartLine).append("\" l=\"").append(lines).append("\" r=\"")
-				        .append(ekey.key).append("\" />");
+		private int getEndLine() {
+			return startLine + lines;
+		}
+
+		private long getEstimatedSize() {
+			// The member itself is written first, instead of being skipped.
+			return GROUP_SIZE + (long) parts.size() * (BLOCK_SIZE + key.length());
+		}
+
+		/**
+		 * @param maxParts
+		 *            The maximal number of other parts to write.
+		 */
+		private void write(StringBuilder out, int maxParts) {
+			out.append("<g>");
+			out.append("<b s=\"").append(startLine);
+			writeBlockEnd(out, lines, key);
+			int written = 0;
+			for (int i = 0; i < parts.size() && written < maxParts; ++i) {
+				if (i != self) {
+					Part part = parts.get(i);
+					out.append("<b s=\"").append(part.startLine);
+					writeBlockEnd(out, lines, part.key);
+					++written;
+				}
 			}
-			str.append("</g>");
+			out.append("</g>");
+		}
 
-			return str.toString();
+		private static void writeBlockEnd(StringBuilder out, int lines, String key) {
+			out.append("\" l=\"").append(lines).append("\" r=\"").append(key).append("\" />");
 		}
 	}
 
+	private static final String HEADER = "<duplications>";
+
+	private static final String FOOTER = "</duplications>";
+
+	private static final int HEADER_SIZE = HEADER.length() + FOOTER.length();
+
+	private static final int GROUP_SIZE = "<g></g>".length();
+
+	/**
+	 * Without the key and assuming a few digits for both numbers.
+	 */
+	private static final int BLOCK_SIZE = "<b s=\"\" l=\"\" r=\"\" />".length() + 8;
+
 	private static final Comparator<XmlEntry> XmlEntryComparator = new Comparator<XmlEntry>() {
 
 		@Override
@@ -66,42 +107,239 @@ class DuplicationData {
 		}
 	};
 
-	private String key;
+	/**
+	 * Containing blocks come before the blocks they contain.
+	 */
+	private static final Comparator<XmlEntry> ContainmentComparator = new Comparator<XmlEntry>() {
+
+		@Override
+		public int compare(XmlEntry o1, XmlEntry o2) {
+			if (o1.startLine != o2.startLine) {
+				return o1.startLine - o2.startLine;
+			} else if (o1.lines != o2.lines) {
+				return o2.lines - o1.lines;
+			}
+			return o1.report - o2.report;
+		}
+	};
+
+	private final String key;
+
+	private final Resource resource;
 
 	private final List<XmlEntry> duplicationXMLEntries = new ArrayList<XmlEntry>();
 
 	private double duplicatedBlockCount;
 
-	private Set<Integer> overallDuplicatedLines = Sets.newHashSet();
+	private final LineRanges overallDuplicatedLines = new LineRanges();
+
+	/**
+	 * The estimated size of the XML data, assuming that every key is about as
+	 * long as the one of this file.
+	 */
+	private long estimatedXmlSize = HEADER_SIZE;
+
+	/**
+	 * The index of the first report contributing to this file.
+	 */
+	private int firstReport = -1;
+
+	private boolean multipleReports;
 
-	public DuplicationData(SensorContext context, Resource resource, String path) {
-		Resource resolverdResource = context.getResource(resource);
-		key = resolverdResource.getEffectiveKey();
+	public DuplicationData(String key, Resource resource) {
+		this.key = key;
+		this.resource = resource;
 	}
 
-	public void cumulate(HashSet<Part> parts, int duplicationStartLine, int duplicatedLines) {
+	/**
+	 * Cumulate a whole duplication set in a single pass, its members having
+	 * been resolved beforehand. Every member shares the same list of parts.
+	 *
+	 * @param resources
+	 *            The resources of the members, null when not resolved.
+	 * @param keys
+	 *            The effective keys of the members.
+	 * @param startLines
+	 *            The start lines of the members.
+	 * @param singleFile
+	 *            Whether all the members are in the same file, in which case
+	 *            only the first member is cumulated.
+	 * @param report
+	 *            The index of the report containing the duplication set.
+	 */
+	public static void cumulate(Map<Resource, DuplicationData> dataPerFile, Resource[] resources, String[] keys,
+	        String[] startLines, int duplicatedLines, boolean singleFile, int report) {
+		List<Part> parts = new ArrayList<Part>(resources.length);
+		int[] selves = new int[resources.length];
+		for (int i = 0; i < resources.length; ++i) {
+			if (resources[i] != null) {
+				selves[i] = parts.size();
+				parts.add(new Part(keys[i], startLines[i]));
+			} else {
+				selves[i] = -1;
+			}
+		}
+
+		for (int i = 0; i < resources.length; ++i) {
+			if (resources[i] != null) {
+				DuplicationData data = dataPerFile.get(resources[i]);
+				if (data == null) {
+					data = new DuplicationData(keys[i], resources[i]);
+					dataPerFile.put(resources[i], data);
+				}
+				data.cumulate(parts, selves[i], Integer.parseInt(startLines[i]), duplicatedLines, report);
+			}
+
+			if (singleFile) {
+				break;
+			}
+		}
+	}
+
+	private void cumulate(List<Part> parts, int self, int duplicationStartLine, int duplicatedLines, int report) {
 		duplicatedBlockCount++;
-		duplicationXMLEntries.add(new XmlEntry(key, duplicationStartLine, duplicatedLines, parts));
-		for (int duplicatedLine = duplicationStartLine; duplicatedLine < duplicationStartLine + duplicatedLines; duplicatedLine++) {
-			overallDuplicatedLines.add(duplicatedLine);
+		XmlEntry xmlEntry = new XmlEntry(key, duplicationStartLine, duplicatedLines, parts, self, report);
+		duplicationXMLEntries.add(xmlEntry);
+		estimatedXmlSize += xmlEntry.getEstimatedSize();
+		overallDuplicatedLines.add(duplicationStartLine, duplicatedLines);
+		if (firstReport < 0) {
+			firstReport = report;
+		} else if (firstReport != report) {
+			multipleReports = true;
+		}
+	}
+
+	/**
+	 * When several reports (from several clone detectors) contribute to this
+	 * file, remove the blocks which are identical to or contained in a block
+	 * coming from another report. Blocks are swept by start line, keeping
+	 * track of the furthest end line reached by the kept blocks of the two
+	 * "best" reports, which is enough to know whether a block is contained in
+	 * a block of another report. Duplicated lines are not affected.
+	 */
+	public void consolidate() {
+		if (!multipleReports) {
+			return;
+		}
+
+		Collections.sort(duplicationXMLEntries, ContainmentComparator);
+		List<XmlEntry> keptEntries = new ArrayList<XmlEntry>(duplicationXMLEntries.size());
+		int bestEnd = Integer.MIN_VALUE;
+		int bestReport = -1;
+		int otherBestEnd = Integer.MIN_VALUE;
+		for (XmlEntry xmlEntry : duplicationXMLEntries) {
+			int end = xmlEntry.getEndLine();
+			int otherReportEnd = xmlEntry.report != bestReport ? bestEnd : otherBestEnd;
+			if (otherReportEnd >= end) {
+				estimatedXmlSize -= xmlEntry.getEstimatedSize();
+				continue;
+			}
+			keptEntries.add(xmlEntry);
+			if (xmlEntry.report == bestReport) {
+				bestEnd = Math.max(bestEnd, end);
+			} else if (end > bestEnd) {
+				otherBestEnd = bestEnd;
+				bestEnd = end;
+				bestReport = xmlEntry.report;
+			} else {
+				otherBestEnd = Math.max(otherBestEnd, end);
+			}
+		}
+
+		int removedCount = duplicationXMLEntries.size() - keptEntries.size();
+		if (removedCount > 0) {
+			logger.debug("Removed {} duplicated blocks of '{}' already found by another report", removedCount, key);
+			duplicationXMLEntries.clear();
+			duplicationXMLEntries.addAll(keptEntries);
+			duplicatedBlockCount = keptEntries.size();
 		}
 	}
 
 	public double getOverallDuplicatedLineCount() {
-		return overallDuplicatedLines.size();
+		return overallDuplicatedLines.getLineCount();
 	}
 
 	public double getDuplicatedBlockCount() {
 		return duplicatedBlockCount;
 	}
 
-	public String getDuplicationXMLData() {
-		Collections.sort(duplicationXMLEntries, XmlEntryComparator);
-		StringBuilder duplicationXML = new StringBuilder("<duplications>");
+	public String getKey() {
+		return key;
+	}
+
+	public Resource getResource() {
+		return resource;
+	}
+
+	public int getFirstReport() {
+		return firstReport;
+	}
+
+	/**
+	 * A digest of the cumulated duplications, computed in insertion order.
+	 *
+	 * @param maxSize
+	 *            The maximal size of the data, as given to
+	 *            {@link #getDuplicationXMLData(StringBuilder, int)}, since the
+	 *            data depends on it.
+	 */
+	public String getDigest(DigestStore.Digest digest, int maxSize) {
+		digest.add(maxSize);
 		for (XmlEntry xmlEntry : duplicationXMLEntries) {
-			duplicationXML.append(xmlEntry);
+			digest.add(xmlEntry.startLine).add(xmlEntry.lines).add(xmlEntry.report);
+			for (int i = 0; i < xmlEntry.parts.size(); ++i) {
+				if (i != xmlEntry.self) {
+					Part part = xmlEntry.parts.get(i);
+					digest.add(part.key).add(part.startLine);
+				}
+			}
+		}
+		return digest.finish();
+	}
+
+	/**
+	 * Write the duplications sorted by start line in a single pass.
+	 *
+	 * @param buffer
+	 *            A buffer, reused from one file to the next, and which is
+	 *            cleared beforehand.
+	 * @param maxSize
+	 *            The maximal size of the data or 0 if unlimited. Above this
+	 *            size, the number of parts written for each block is reduced
+	 *            and, if still not enough, the last blocks are dropped.
+	 */
+	public String getDuplicationXMLData(StringBuilder buffer, int maxSize) {
+		Collections.sort(duplicationXMLEntries, XmlEntryComparator);
+		buffer.setLength(0);
+
+		int maxParts = Integer.MAX_VALUE;
+		if (maxSize > 0 && estimatedXmlSize > maxSize && !duplicationXMLEntries.isEmpty()) {
+			long blockSize = BLOCK_SIZE + key.length();
+			long sizePerEntry = (maxSize - HEADER_SIZE) / duplicationXMLEntries.size();
+			maxParts = (int) Math.max(1, (sizePerEntry - GROUP_SIZE) / blockSize - 1);
+			logger.warn("Duplication data of '{}' is too large (about {} characters), "
+			        + "keeping at most {} duplicated parts per block", new Object[] { key, estimatedXmlSize, maxParts });
+			buffer.ensureCapacity(maxSize);
+		} else {
+			buffer.ensureCapacity((int) Math.min(estimatedXmlSize, Integer.MAX_VALUE));
+		}
+
+		buffer.append(HEADER);
+		int skippedEntries = 0;
+		for (int i = 0; i < duplicationXMLEntries.size(); ++i) {
+			int mark = buffer.length();
+			duplicationXMLEntries.get(i).write(buffer, maxParts);
+			if (maxSize > 0 && buffer.length() + FOOTER.length() > maxSize) {
+				buffer.setLength(mark);
+				skippedEntries = duplicationXMLEntries.size() - i;
+				break;
+			}
+		}
+		if (skippedEntries > 0) {
+			logger.warn("Duplication data of '{}' is too large, {} duplicated blocks have been dropped", key,
+			        skippedEntries);
 		}
-		duplicationXML.append("</duplications>");
-		return duplicationXML.toString();
+		buffer.append(FOOTER);
+		return buffer.toString();
 	}
 }
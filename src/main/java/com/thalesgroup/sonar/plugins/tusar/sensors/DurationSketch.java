@@ -0,0 +1,120 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable quantile sketch of durations (in milliseconds), counting them
+ * in logarithmic buckets so that any quantile is known within a relative
+ * error of {@link #RELATIVE_ACCURACY}. Since durations are ints, there are
+ * at most a few hundred buckets whatever the number of durations added.
+ * The maximum is exact.
+ */
+class DurationSketch {
+
+	static final double RELATIVE_ACCURACY = 0.02;
+
+	private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+
+	private static final double LOG_GAMMA = Math.log(GAMMA);
+
+	private static final int[] EMPTY = new int[0];
+
+	/**
+	 * Bucket i counts the durations in (GAMMA^(i-1), GAMMA^i].
+	 */
+	private int[] counts = EMPTY;
+
+	private long zeroCount;
+
+	private long count;
+
+	private int max;
+
+	void add(int duration) {
+		if (duration <= 0) {
+			++zeroCount;
+		} else {
+			int index = (int) Math.ceil(Math.log(duration) / LOG_GAMMA);
+			ensureCapacity(index + 1);
+			++counts[index];
+			max = Math.max(max, duration);
+		}
+		++count;
+	}
+
+	void merge(DurationSketch other) {
+		ensureCapacity(other.counts.length);
+		for (int i = 0; i < other.counts.length; ++i) {
+			counts[i] += other.counts[i];
+		}
+		zeroCount += other.zeroCount;
+		count += other.count;
+		max = Math.max(max, other.max);
+	}
+
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	int getMax() {
+		return max;
+	}
+
+	/**
+	 * @param quantile
+	 *            Between 0 and 1.
+	 * @return The estimated duration of the given quantile, 0 when empty.
+	 */
+	double getQuantile(double quantile) {
+		long rank = (long) Math.floor(quantile * (count - 1));
+		if (count == 0 || rank < zeroCount) {
+			return 0;
+		}
+		long seen = zeroCount;
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if (rank < seen) {
+				// The middle of the bucket in terms of relative error.
+				return Math.min(2 * Math.pow(GAMMA, i) / (GAMMA + 1), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return A compact textual form, restored by {@link #decode(String)}.
+	 */
+	String encode() {
+		StringBuilder buffer = new StringBuilder();
+		buffer.append(zeroCount).append(';').append(max);
+		for (int i = 0; i < counts.length; ++i) {
+			if (counts[i] > 0) {
+				buffer.append(';').append(i).append('=').append(counts[i]);
+			}
+		}
+		return buffer.toString();
+	}
+
+	static DurationSketch decode(String value) {
+		DurationSketch sketch = new DurationSketch();
+		String[] fields = value.split(";");
+		sketch.zeroCount = Long.parseLong(fields[0]);
+		sketch.count = sketch.zeroCount;
+		sketch.max = Integer.parseInt(fields[1]);
+		for (int i = 2; i < fields.length; ++i) {
+			int separator = fields[i].indexOf('=');
+			int index = Integer.parseInt(fields[i].substring(0, separator));
+			int bucketCount = Integer.parseInt(fields[i].substring(separator + 1));
+			sketch.ensureCapacity(index + 1);
+			sketch.counts[index] = bucketCount;
+			sketch.count += bucketCount;
+		}
+		return sketch;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > counts.length) {
+			counts = Arrays.copyOf(counts, capacity);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.Arrays;
+
+import org.sonar.api.measures.PropertiesBuilder;
+
+/**
+ * Build "line=value;line=value" data (such as line hits or conditions by line)
+ * like a {@link PropertiesBuilder} would do, the last value added for a line
+ * winning, but using primitive arrays instead of boxing every line and value.
+ * Lines are written in numerical order. Meant to be reused: the instance is
+ * cleared by each {@link #build()} call (or explicitly by {@link #clear()}).
+ */
+class LineDataBuilder {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * Each entry packs the line in the high bits and the insertion order in
+	 * the low bits, so that sorting the entries sorts the lines and keeps
+	 * the insertion order for duplicated lines.
+	 */
+	private long[] entries = new long[INITIAL_CAPACITY];
+
+	private int[] values = new int[INITIAL_CAPACITY];
+
+	private int size;
+
+	private final StringBuilder buffer = new StringBuilder();
+
+	public LineDataBuilder clear() {
+		size = 0;
+		return this;
+	}
+
+	public LineDataBuilder add(int line, int value) {
+		if (size == entries.length) {
+			entries = Arrays.copyOf(entries, 2 * size);
+			values = Arrays.copyOf(values, 2 * size);
+		}
+		entries[size] = ((long) line << 32) | size;
+		values[size] = value;
+		++size;
+		return this;
+	}
+
+	public String build() {
+		Arrays.sort(entries, 0, size);
+		buffer.setLength(0);
+		for (int i = 0; i < size; ++i) {
+			int line = (int) (entries[i] >> 32);
+			// Only the last value of a line is kept.
+			if (i + 1 < size && (int) (entries[i + 1] >> 32) == line) {
+				continue;
+			}
+			if (buffer.length() > 0) {
+				buffer.append(';');
+			}
+			buffer.append(line).append('=').append(values[(int) entries[i]]);
+		}
+		size = 0;
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,171 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+/**
+ * A union of line ranges, kept as sorted and disjoint intervals which are
+ * merged in place as ranges are added. The memory used depends on the number
+ * of disjoint intervals, not on the number of lines, which makes it a
+ * compressed bitmap of lines for contiguous ranges (such as covered lines).
+ */
+class LineRanges {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * Inclusive starts of the intervals.
+	 */
+	private int[] starts = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Exclusive ends of the intervals.
+	 */
+	private int[] ends = new int[INITIAL_CAPACITY];
+
+	private int size;
+
+	private int lineCount;
+
+	/**
+	 * Add the lines [start, start + length).
+	 */
+	public void add(int start, int length) {
+		if (length <= 0) {
+			return;
+		}
+		int end = start + length;
+
+		// The first interval which overlaps or touches the new one.
+		int first = firstEndingFrom(start);
+		int last = first;
+		int mergedStart = start;
+		int mergedEnd = end;
+		while (last < size && starts[last] <= end) {
+			mergedStart = Math.min(mergedStart, starts[last]);
+			mergedEnd = Math.max(mergedEnd, ends[last]);
+			lineCount -= ends[last] - starts[last];
+			++last;
+		}
+
+		if (first == last) {
+			ensureCapacity(size + 1);
+			System.arraycopy(starts, first, starts, first + 1, size - first);
+			System.arraycopy(ends, first, ends, first + 1, size - first);
+			++size;
+		} else if (last - first > 1) {
+			System.arraycopy(starts, last, starts, first + 1, size - last);
+			System.arraycopy(ends, last, ends, first + 1, size - last);
+			size -= last - first - 1;
+		}
+		starts[first] = mergedStart;
+		ends[first] = mergedEnd;
+		lineCount += mergedEnd - mergedStart;
+	}
+
+	/**
+	 * @return A new instance holding the lines of both instances, computed by
+	 *         a single merge of their intervals.
+	 */
+	public static LineRanges union(LineRanges a, LineRanges b) {
+		LineRanges result = new LineRanges();
+		result.ensureCapacity(a.size + b.size);
+		int i = 0;
+		int j = 0;
+		while (i < a.size || j < b.size) {
+			int start;
+			int end;
+			if (j == b.size || (i < a.size && a.starts[i] <= b.starts[j])) {
+				start = a.starts[i];
+				end = a.ends[i++];
+			} else {
+				start = b.starts[j];
+				end = b.ends[j++];
+			}
+			int last = result.size - 1;
+			if (last >= 0 && start <= result.ends[last]) {
+				if (end > result.ends[last]) {
+					result.lineCount += end - result.ends[last];
+					result.ends[last] = end;
+				}
+			} else {
+				result.starts[result.size] = start;
+				result.ends[result.size] = end;
+				++result.size;
+				result.lineCount += end - start;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return A new instance holding the lines common to both instances,
+	 *         computed by a single merge of their intervals.
+	 */
+	public static LineRanges intersection(LineRanges a, LineRanges b) {
+		LineRanges result = new LineRanges();
+		int i = 0;
+		int j = 0;
+		while (i < a.size && j < b.size) {
+			int start = Math.max(a.starts[i], b.starts[j]);
+			int end = Math.min(a.ends[i], b.ends[j]);
+			if (start < end) {
+				result.ensureCapacity(result.size + 1);
+				result.starts[result.size] = start;
+				result.ends[result.size] = end;
+				++result.size;
+				result.lineCount += end - start;
+			}
+			if (a.ends[i] < b.ends[j]) {
+				++i;
+			} else {
+				++j;
+			}
+		}
+		return result;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return The number of distinct lines.
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return The number of disjoint intervals.
+	 */
+	public int getIntervalCount() {
+		return size;
+	}
+
+	/**
+	 * Binary search of the first interval whose end is not before the line.
+	 */
+	private int firstEndingFrom(int line) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (ends[middle] < line) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > starts.length) {
+			int newCapacity = Math.max(capacity, starts.length * 2);
+			int[] newStarts = new int[newCapacity];
+			int[] newEnds = new int[newCapacity];
+			System.arraycopy(starts, 0, newStarts, 0, size);
+			System.arraycopy(ends, 0, newEnds, 0, size);
+			starts = newStarts;
+			ends = newEnds;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+/**
+ * A set of longs using open addressing in a single long array, without
+ * boxing nor per entry object: about 16 bytes per element at most.
+ */
+class LongHashSet {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private static final long EMPTY = 0L;
+
+	/**
+	 * The empty slot marker can't be stored in the table.
+	 */
+	private boolean containsEmpty;
+
+	private long[] table = new long[INITIAL_CAPACITY];
+
+	/**
+	 * The table length is a power of two, indexed by the high bits of the
+	 * hash.
+	 */
+	private int shift = 64 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+
+	private int size;
+
+	/**
+	 * @return Whether the value was not already in the set.
+	 */
+	boolean add(long value) {
+		if (value == EMPTY) {
+			if (containsEmpty) {
+				return false;
+			}
+			containsEmpty = true;
+			++size;
+			return true;
+		}
+		int mask = table.length - 1;
+		for (int i = index(value);; i = (i + 1) & mask) {
+			long current = table[i];
+			if (current == value) {
+				return false;
+			} else if (current == EMPTY) {
+				table[i] = value;
+				if (++size > table.length >> 1) {
+					grow();
+				}
+				return true;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	private int index(long value) {
+		// Fibonacci hashing spreads sequential values.
+		return (int) ((value * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	private void grow() {
+		long[] oldTable = table;
+		table = new long[oldTable.length * 2];
+		--shift;
+		int mask = table.length - 1;
+		for (long value : oldTable) {
+			if (value != EMPTY) {
+				int i = index(value);
+				while (table[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				table[i] = value;
+			}
+		}
+	}
+}
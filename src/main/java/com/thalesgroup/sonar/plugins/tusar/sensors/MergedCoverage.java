@@ -0,0 +1,189 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.Arrays;
+
+import org.sonar.api.resources.Resource;
+
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+
+/**
+ * The coverage of a single file merged across several reports (unit tests,
+ * integration tests, etc.), kept in primitive arrays indexed by line. Line
+ * hits are summed, while the number of conditions and of covered conditions
+ * of a line are the maximum found, the reports being expected to agree on the
+ * conditions of a line. Lines beyond {@link #MAX_LINE} are rejected, a bogus
+ * line number being otherwise enough to exhaust the memory.
+ */
+class MergedCoverage {
+
+	private static final int[] EMPTY = new int[0];
+
+	private static final int ABSENT = -1;
+
+	/**
+	 * Far beyond any real source file.
+	 */
+	static final int MAX_LINE = 1 << 20;
+
+	/**
+	 * The first report contributing to the file.
+	 */
+	final Report report;
+
+	final Resource resource;
+
+	private int[] hits = EMPTY;
+
+	private int[] conditions = EMPTY;
+
+	private int[] coveredConditions = EMPTY;
+
+	private int lineCount;
+
+	private int conditionLineCount;
+
+	private int rejectedLineCount;
+
+	MergedCoverage(Report report, Resource resource) {
+		this.report = report;
+		this.resource = resource;
+	}
+
+	void addLineHits(int line, int lineHits) {
+		if (!accept(line)) {
+			return;
+		}
+		hits = ensureCapacity(hits, line);
+		if (hits[line] == ABSENT) {
+			hits[line] = Math.max(lineHits, 0);
+			++lineCount;
+		} else {
+			long sum = (long) hits[line] + Math.max(lineHits, 0);
+			hits[line] = (int) Math.min(sum, Integer.MAX_VALUE);
+		}
+	}
+
+	void addConditions(int line, int lineConditions, int lineCoveredConditions) {
+		if (!accept(line)) {
+			return;
+		}
+		conditions = ensureCapacity(conditions, line);
+		coveredConditions = ensureCapacity(coveredConditions, line);
+		if (conditions[line] == ABSENT) {
+			++conditionLineCount;
+		}
+		conditions[line] = Math.max(conditions[line], lineConditions);
+		coveredConditions[line] = Math.max(coveredConditions[line], lineCoveredConditions);
+	}
+
+	/**
+	 * @return The number of lines (hits or conditions) ignored for being
+	 *         beyond {@link #MAX_LINE}.
+	 */
+	int getRejectedLineCount() {
+		return rejectedLineCount;
+	}
+
+	boolean hasLineCoverage() {
+		return lineCount > 0;
+	}
+
+	boolean hasBranchCoverage() {
+		return conditionLineCount > 0;
+	}
+
+	double getLines() {
+		return lineCount;
+	}
+
+	double getCoveredLines() {
+		int coveredLines = 0;
+		for (int lineHits : hits) {
+			if (lineHits > 0) {
+				++coveredLines;
+			}
+		}
+		return coveredLines;
+	}
+
+	double getConditionsToCover() {
+		double sum = 0;
+		for (int lineConditions : conditions) {
+			if (lineConditions != ABSENT) {
+				sum += lineConditions;
+			}
+		}
+		return sum;
+	}
+
+	double getUncoveredConditions() {
+		double sum = 0;
+		for (int line = 0; line < conditions.length; ++line) {
+			if (conditions[line] != ABSENT) {
+				sum += conditions[line] - Math.min(Math.max(coveredConditions[line], 0), conditions[line]);
+			}
+		}
+		return sum;
+	}
+
+	String getLineHitsData(LineDataBuilder builder) {
+		return build(builder.clear(), hits);
+	}
+
+	String getConditionsByLineData(LineDataBuilder builder) {
+		return build(builder.clear(), conditions);
+	}
+
+	String getCoveredConditionsByLineData(LineDataBuilder builder) {
+		builder.clear();
+		for (int line = 0; line < conditions.length; ++line) {
+			if (conditions[line] != ABSENT) {
+				builder.add(line, Math.max(coveredConditions[line], 0));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Like the branch coverage alone would do: every line having conditions is
+	 * considered as hit once.
+	 */
+	String getBranchLineHitsData(LineDataBuilder builder) {
+		builder.clear();
+		for (int line = 0; line < conditions.length; ++line) {
+			if (conditions[line] != ABSENT) {
+				builder.add(line, 1);
+			}
+		}
+		return builder.build();
+	}
+
+	private static String build(LineDataBuilder builder, int[] values) {
+		for (int line = 0; line < values.length; ++line) {
+			if (values[line] != ABSENT) {
+				builder.add(line, values[line]);
+			}
+		}
+		return builder.build();
+	}
+
+	private boolean accept(int line) {
+		if (line < 0) {
+			return false;
+		} else if (line > MAX_LINE) {
+			++rejectedLineCount;
+			return false;
+		}
+		return true;
+	}
+
+	private static int[] ensureCapacity(int[] values, int line) {
+		if (line < values.length) {
+			return values;
+		}
+		int length = values.length;
+		int[] newValues = Arrays.copyOf(values, Math.max(line + 1, Math.max(16, 2 * length)));
+		Arrays.fill(newValues, length, newValues.length, ABSENT);
+		return newValues;
+	}
+}
@@ -0,0 +1,147 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metric.Level;
+import org.sonar.api.measures.PersistenceMode;
+
+/**
+ * Turn the raw values found in TUSAR reports into measures of a given metric.
+ * The decoding strategy is chosen once according to the metric type, and
+ * values which don't suit this type are counted instead of throwing an
+ * exception. Safe to be used by several threads.
+ */
+abstract class MetricCodec {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricCodec.class);
+
+	private static final Map<String, Level> LEVELS = new HashMap<String, Level>();
+	static {
+		for (Level level : Level.values()) {
+			LEVELS.put(level.name(), level);
+		}
+	}
+
+	protected final Metric metric;
+
+	private final AtomicInteger rejectedValueCount = new AtomicInteger();
+
+	static MetricCodec compile(final Metric metric) {
+		switch (metric.getType()) {
+
+		case BOOL:
+			return new MetricCodec(metric) {
+
+				@Override
+				protected Measure decode(String value) {
+					return new Measure(metric, value);
+				}
+			};
+
+		case STRING:
+		case DATA:
+		case DISTRIB:
+		case WORK_DUR:
+			return new MetricCodec(metric) {
+
+				@Override
+				protected Measure decode(String value) {
+					return new Measure(metric, value).setPersistenceMode(PersistenceMode.DATABASE);
+				}
+			};
+
+		case LEVEL:
+			return new MetricCodec(metric) {
+
+				@Override
+				protected Measure decode(String value) {
+					Level level = LEVELS.get(value);
+					if (level == null) {
+						level = LEVELS.get(value.trim().toUpperCase());
+					}
+					return level != null ? new Measure(metric, level) : null;
+				}
+			};
+
+		case INT:
+		case MILLISEC:
+		case RATING:
+			return new MetricCodec(metric) {
+
+				@Override
+				protected Measure decode(String value) {
+					double number = NumberDecoder.decode(value);
+					return number == Math.rint(number) ? new Measure(metric, number) : null;
+				}
+			};
+
+		case PERCENT:
+			return new MetricCodec(metric) {
+
+				@Override
+				protected Measure decode(String value) {
+					double number = NumberDecoder.decode(value);
+					return number >= 0d && number <= 100d ? new Measure(metric, number) : null;
+				}
+			};
+
+		case FLOAT:
+			return new MetricCodec(metric) {
+
+				@Override
+				protected Measure decode(String value) {
+					double number = NumberDecoder.decode(value);
+					return !Double.isNaN(number) && !Double.isInfinite(number) ? new Measure(metric, number) : null;
+				}
+			};
+
+		default:
+			logger.warn("Unknown type '{}' for metric '{}' ({}), its measures will be skipped", new Object[] {
+			        metric.getType(), metric.getKey(), metric.getDescription() });
+			return new MetricCodec(metric) {
+
+				@Override
+				protected Measure decode(String value) {
+					return null;
+				}
+			};
+		}
+	}
+
+	private MetricCodec(Metric metric) {
+		this.metric = metric;
+	}
+
+	Metric getMetric() {
+		return metric;
+	}
+
+	/**
+	 * @return The measure or null if the value was rejected.
+	 */
+	Measure createMeasure(String value) {
+		Measure measure = value != null ? decode(value) : null;
+		if (measure == null && rejectedValueCount.getAndIncrement() == 0) {
+			logger.warn("Skipped invalid value '{}' for metric '{}'", value, metric.getKey());
+		}
+		return measure;
+	}
+
+	/**
+	 * @return The number of values rejected since the last call.
+	 */
+	int resetRejectedValueCount() {
+		return rejectedValueCount.getAndSet(0);
+	}
+
+	/**
+	 * @return The measure or null if the value doesn't suit the metric.
+	 */
+	protected abstract Measure decode(String value);
+}
@@ -0,0 +1,164 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.measures.Formula;
+import org.sonar.api.measures.MeanAggregationFormula;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.SumChildValuesFormula;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+
+/**
+ * Aggregate the measures of user defined metrics up to the module in a single
+ * bottom-up pass over the resources having received TUSAR measures, instead of
+ * leaving it to the formula decorators which visit every resource of the
+ * project. The formula decorators are still executed, but skip the resources
+ * which already have a measure.
+ *
+ * Only numeric metrics using a {@link SumChildValuesFormula} or a
+ * {@link MeanAggregationFormula} are aggregated, in the same way as their
+ * formula would do: a sum or a mean of the children values, the resources
+ * without any child measure being left to the decorators.
+ */
+class MetricRollups {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricRollups.class);
+
+	private final Metric[] metrics;
+
+	/**
+	 * Whether each metric is aggregated as a mean rather than a sum.
+	 */
+	private final boolean[] means;
+
+	private static class Node {
+
+		private final Resource resource;
+
+		private final List<Node> children = new ArrayList<Node>();
+
+		/**
+		 * NaN when no value.
+		 */
+		private final double[] values;
+
+		/**
+		 * Whether the value of each metric was already there.
+		 */
+		private final boolean[] measured;
+
+		private Node(Resource resource, int metricCount) {
+			this.resource = resource;
+			this.values = new double[metricCount];
+			this.measured = new boolean[metricCount];
+		}
+	}
+
+	MetricRollups(Collection<Metric> candidateMetrics) {
+		List<Metric> metrics = new ArrayList<Metric>();
+		List<Boolean> means = new ArrayList<Boolean>();
+		for (Metric metric : candidateMetrics) {
+			Formula formula = metric.getFormula();
+			if (metric.isNumericType() && formula instanceof SumChildValuesFormula) {
+				metrics.add(metric);
+				means.add(Boolean.FALSE);
+			} else if (metric.isNumericType() && formula instanceof MeanAggregationFormula) {
+				metrics.add(metric);
+				means.add(Boolean.TRUE);
+			}
+		}
+		this.metrics = metrics.toArray(new Metric[metrics.size()]);
+		this.means = new boolean[metrics.size()];
+		for (int i = 0; i < this.means.length; ++i) {
+			this.means[i] = means.get(i);
+		}
+	}
+
+	boolean isEmpty() {
+		return metrics.length == 0;
+	}
+
+	/**
+	 * @param resources
+	 *            The resources having received TUSAR measures, which are
+	 *            expected to be already saved.
+	 */
+	void execute(SensorContext sensorContext, Project project, Collection<Resource> resources) {
+		Map<Resource, Node> nodes = new LinkedHashMap<Resource, Node>();
+		Node root = getNode(sensorContext, nodes, project);
+		for (Resource resource : resources) {
+			if (nodes.containsKey(resource)) {
+				continue;
+			}
+			// Link the resource up to the first already known ancestor.
+			Node child = getNode(sensorContext, nodes, resource);
+			Resource parent = sensorContext.getParent(resource);
+			while (parent != null) {
+				boolean known = nodes.containsKey(parent);
+				Node parentNode = getNode(sensorContext, nodes, parent);
+				parentNode.children.add(child);
+				if (known) {
+					break;
+				}
+				child = parentNode;
+				parent = sensorContext.getParent(parent);
+			}
+		}
+
+		int count = aggregate(sensorContext, root);
+		logger.debug("Aggregated {} measures of user defined metrics over {} resources", count, nodes.size());
+	}
+
+	private Node getNode(SensorContext sensorContext, Map<Resource, Node> nodes, Resource resource) {
+		Node node = nodes.get(resource);
+		if (node == null) {
+			node = new Node(resource, metrics.length);
+			for (int i = 0; i < metrics.length; ++i) {
+				Measure measure = sensorContext.getMeasure(resource, metrics[i]);
+				node.measured[i] = measure != null && measure.getValue() != null;
+				node.values[i] = node.measured[i] ? measure.getValue() : Double.NaN;
+			}
+			nodes.put(resource, node);
+		}
+		return node;
+	}
+
+	/**
+	 * @return The number of saved measures.
+	 */
+	private int aggregate(SensorContext sensorContext, Node node) {
+		int count = 0;
+		for (Node child : node.children) {
+			count += aggregate(sensorContext, child);
+		}
+		if (!node.children.isEmpty()) {
+			for (int i = 0; i < metrics.length; ++i) {
+				if (!node.measured[i]) {
+					double sum = 0;
+					int valueCount = 0;
+					for (Node child : node.children) {
+						if (!Double.isNaN(child.values[i])) {
+							sum += child.values[i];
+							++valueCount;
+						}
+					}
+					if (valueCount > 0) {
+						node.values[i] = means[i] ? sum / valueCount : sum;
+						sensorContext.saveMeasure(node.resource, new Measure(metrics[i], node.values[i]));
+						++count;
+					}
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,143 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.MetricFinder;
+
+/**
+ * An immutable snapshot of every metric known to SonarQube, built once per
+ * analysis, to resolve the metric keys found in TUSAR reports without hitting
+ * the {@link MetricFinder} for each measure. Each metric comes with its
+ * {@link MetricCodec}. Safe to be used by several threads.
+ */
+class MetricTable {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricTable.class);
+
+	/**
+	 * Marks keys which have already been resolved to nothing.
+	 */
+	private static final MetricCodec UNKNOWN = MetricCodec.compile(new Metric.Builder("tusar_unknown",
+	        "tusar_unknown", Metric.ValueType.INT).create());
+
+	private static MetricTable instance;
+
+	private final MetricFinder metricFinder;
+
+	/**
+	 * The metrics using their exact keys.
+	 */
+	private final Map<String, MetricCodec> metrics;
+
+	/**
+	 * The metrics using TUSAR size keys: translated keys and lower case metric
+	 * keys (TUSAR size keys are case insensitive).
+	 */
+	private final Map<String, MetricCodec> sizeMetrics;
+
+	/**
+	 * Keys whose resolution required some work (or failed) the first time
+	 * they were met.
+	 */
+	private final ConcurrentMap<String, MetricCodec> resolvedKeys = new ConcurrentHashMap<String, MetricCodec>();
+
+	/**
+	 * @param translations
+	 *            TUSAR size keys translated into SonarQube metrics.
+	 */
+	static synchronized MetricTable getInstance(MetricFinder metricFinder, Map<String, Metric> translations) {
+		if (instance == null || instance.metricFinder != metricFinder) {
+			instance = new MetricTable(metricFinder, translations);
+		}
+		return instance;
+	}
+
+	private MetricTable(MetricFinder metricFinder, Map<String, Metric> translations) {
+		this.metricFinder = metricFinder;
+
+		Map<String, MetricCodec> metrics = new HashMap<String, MetricCodec>();
+		for (Metric metric : metricFinder.findAll()) {
+			metrics.put(metric.getKey(), MetricCodec.compile(metric));
+		}
+		this.metrics = Collections.unmodifiableMap(metrics);
+
+		Map<String, MetricCodec> sizeMetrics = new HashMap<String, MetricCodec>();
+		for (Map.Entry<String, MetricCodec> entry : metrics.entrySet()) {
+			if (entry.getKey().equals(entry.getKey().toLowerCase())) {
+				sizeMetrics.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Map.Entry<String, Metric> entry : translations.entrySet()) {
+			MetricCodec codec = metrics.get(entry.getValue().getKey());
+			sizeMetrics.put(entry.getKey(), codec != null ? codec : UNKNOWN);
+		}
+		this.sizeMetrics = Collections.unmodifiableMap(sizeMetrics);
+
+		logger.debug("Loaded {} metrics", metrics.size());
+	}
+
+	/**
+	 * @return The codec of the metric using exactly this key or null if none.
+	 */
+	MetricCodec find(String key) {
+		MetricCodec metric = metrics.get(key);
+		if (metric == null) {
+			metric = resolve(key, null, false);
+		}
+		return metric;
+	}
+
+	/**
+	 * @return The codec of the metric translated from a TUSAR size key or null
+	 *         if none.
+	 */
+	MetricCodec findSize(String key) {
+		MetricCodec metric = sizeMetrics.get(key);
+		if (metric == null) {
+			//prod00141550: measure key insensitive
+			metric = resolve(key, sizeMetrics.get(key.toLowerCase()), false);
+		} else if (metric == UNKNOWN) {
+			metric = resolve(key, null, true);
+		}
+		return metric;
+	}
+
+	/**
+	 * @param translated
+	 *            True when the key is translated into a metric unsupported by
+	 *            SonarQube.
+	 */
+	private MetricCodec resolve(String key, MetricCodec metric, boolean translated) {
+		MetricCodec resolvedMetric = resolvedKeys.get(key);
+		if (resolvedMetric == null) {
+			resolvedMetric = metric != null && metric != UNKNOWN ? metric : UNKNOWN;
+			if (resolvedKeys.putIfAbsent(key, resolvedMetric) == null && resolvedMetric == UNKNOWN) {
+				if (translated) {
+					logger.warn("TUSAR report contains measures for the unsupported {} metric.", key);
+				} else {
+					logger.warn("Skipped measure using unknown metric '{}'", key);
+				}
+			}
+		}
+		return resolvedMetric != UNKNOWN ? resolvedMetric : null;
+	}
+
+	/**
+	 * Report (and reset) the number of values rejected by each metric codec.
+	 */
+	void reportRejectedValues() {
+		for (MetricCodec codec : metrics.values()) {
+			int count = codec.resetRejectedValueCount();
+			if (count > 0) {
+				logger.warn("Skipped {} invalid values for metric '{}'", count, codec.getMetric().getKey());
+			}
+		}
+	}
+}
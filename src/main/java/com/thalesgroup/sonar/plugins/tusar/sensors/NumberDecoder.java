@@ -0,0 +1,182 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.text.ParseException;
+import java.util.Locale;
+
+import org.sonar.api.utils.ParsingUtils;
+
+/**
+ * Decode the numbers found in TUSAR reports without allocating anything for
+ * the common cases (plain decimal numbers) and without relying on exceptions
+ * to reject invalid values. Both '.' and ',' are accepted as decimal
+ * separator since reports are produced by tools running with various locales,
+ * except when a ',' could as well be a grouping separator ("1,000"): such
+ * values are rejected rather than guessed.
+ */
+final class NumberDecoder {
+
+	/**
+	 * Mantissas up to 2^53 and powers of ten up to 10^22 are exactly
+	 * represented as doubles, so dividing one by the other is correctly
+	 * rounded.
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/**
+	 * Any number of up to 9 digits fits in an int.
+	 */
+	private static final int MAX_FAST_COUNT_DIGITS = 9;
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1d;
+		for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10d;
+		}
+	}
+
+	private NumberDecoder() {
+	}
+
+	/**
+	 * @return The decoded value or NaN if the value is not a number.
+	 */
+	static double decode(String value) {
+		int start = 0;
+		int end = value.length();
+		while (start < end && value.charAt(start) <= ' ') {
+			++start;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			--end;
+		}
+		if (start == end) {
+			return Double.NaN;
+		}
+
+		int i = start;
+		boolean negative = false;
+		char c = value.charAt(i);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			++i;
+		}
+
+		long mantissa = 0;
+		int scale = -1;
+		int comma = -1;
+		boolean hasDigits = false;
+		for (; i < end; ++i) {
+			c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa >= MAX_EXACT_MANTISSA) {
+					return decodeSlowly(value, start, end);
+				}
+				hasDigits = true;
+				if (scale >= 0) {
+					++scale;
+				}
+			} else if ((c == '.' || c == ',') && scale < 0) {
+				scale = 0;
+				if (c == ',') {
+					comma = i;
+				}
+			} else {
+				return decodeSlowly(value, start, end);
+			}
+		}
+		if (!hasDigits || (comma >= 0 && isGroupingShaped(value, start, comma, end))) {
+			return Double.NaN;
+		}
+
+		double result = mantissa;
+		if (scale > 0) {
+			if (scale >= POWERS_OF_TEN.length) {
+				return decodeSlowly(value, start, end);
+			}
+			result /= POWERS_OF_TEN[scale];
+		}
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Decode a count, such as the hits or the number of branches of a line,
+	 * the same way as <code>(int) ParsingUtils.parseNumber(value, Locale.ENGLISH)</code>
+	 * but without going through a {@link java.text.NumberFormat} for plain
+	 * integers, which is what coverage reports are made of. Anything else
+	 * (grouping separators, decimals, exponents, huge values) is left to
+	 * {@link ParsingUtils}.
+	 *
+	 * @throws ParseException
+	 *             If {@link ParsingUtils} can't parse the value either.
+	 */
+	static int decodeCount(String value) throws ParseException {
+		int length = value != null ? value.length() : 0;
+		int i = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+		if (length > i && length - i <= MAX_FAST_COUNT_DIGITS) {
+			int count = 0;
+			for (int j = i; j < length; ++j) {
+				char c = value.charAt(j);
+				if (c < '0' || c > '9') {
+					return (int) ParsingUtils.parseNumber(value, Locale.ENGLISH);
+				}
+				count = count * 10 + (c - '0');
+			}
+			return i == 0 ? count : -count;
+		}
+		return (int) ParsingUtils.parseNumber(value, Locale.ENGLISH);
+	}
+
+	/**
+	 * Whether the ',' at the given index could be a grouping separator: one to
+	 * three integer digits (but not a lone 0) before it, exactly three digits
+	 * after it.
+	 */
+	private static boolean isGroupingShaped(String value, int start, int comma, int end) {
+		int i = start;
+		if (value.charAt(i) == '-' || value.charAt(i) == '+') {
+			++i;
+		}
+		int integerDigits = comma - i;
+		if (integerDigits < 1 || integerDigits > 3 || (integerDigits == 1 && value.charAt(i) == '0')) {
+			return false;
+		}
+		int fractionDigits = 0;
+		for (int j = comma + 1; j < end && value.charAt(j) >= '0' && value.charAt(j) <= '9'; ++j) {
+			++fractionDigits;
+		}
+		return fractionDigits == 3;
+	}
+
+	/**
+	 * Exponents, long mantissas and the like are left to the JDK, but only
+	 * when the value looks like a number.
+	 */
+	private static double decodeSlowly(String value, int start, int end) {
+		boolean hasDigits = false;
+		int separators = 0;
+		int comma = -1;
+		for (int i = start; i < end; ++i) {
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				hasDigits = true;
+			} else if (c == '.' || c == ',') {
+				++separators;
+				if (c == ',') {
+					comma = i;
+				}
+			} else if (c != '-' && c != '+' && c != 'e' && c != 'E') {
+				return Double.NaN;
+			}
+		}
+		if (!hasDigits || (comma >= 0 && (separators > 1 || isGroupingShaped(value, start, comma, end)))) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value.substring(start, end).replace(',', '.'));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+}
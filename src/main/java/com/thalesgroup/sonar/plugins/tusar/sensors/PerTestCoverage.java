@@ -0,0 +1,62 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.sonar.api.resources.Resource;
+
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+
+/**
+ * How many tests cover a file and its lines, the tests being folded one at a
+ * time so that only two line sets are kept per file whatever the number of
+ * tests: the lines covered by at least one test and the lines covered by at
+ * least two tests.
+ */
+class PerTestCoverage {
+
+	/**
+	 * The first report contributing to the file.
+	 */
+	final Report report;
+
+	final Resource resource;
+
+	private LineRanges coveredOnce = new LineRanges();
+
+	private LineRanges coveredTwice = new LineRanges();
+
+	private int testCount;
+
+	PerTestCoverage(Report report, Resource resource) {
+		this.report = report;
+		this.resource = resource;
+	}
+
+	/**
+	 * @param coveredLines
+	 *            The lines of the file covered by a single test, which is
+	 *            expected to be added only once.
+	 */
+	void addTest(LineRanges coveredLines) {
+		if (coveredLines.isEmpty()) {
+			return;
+		}
+		++testCount;
+		LineRanges alreadyCovered = LineRanges.intersection(coveredOnce, coveredLines);
+		if (!alreadyCovered.isEmpty()) {
+			coveredTwice = LineRanges.union(coveredTwice, alreadyCovered);
+		}
+		coveredOnce = LineRanges.union(coveredOnce, coveredLines);
+	}
+
+	int getTestCount() {
+		return testCount;
+	}
+
+	int getSingleTestCoveredLines() {
+		// Lines covered twice are also covered once.
+		return coveredOnce.getLineCount() - coveredTwice.getLineCount();
+	}
+
+	int getMultipleTestsCoveredLines() {
+		return coveredTwice.getLineCount();
+	}
+}
@@ -0,0 +1,80 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set the resolution of issues, which the issue API doesn't allow at the
+ * batch level, through their private "resolution" field. The field is looked
+ * up (and made accessible) once per issue class, a class without such a
+ * field being reported once.
+ */
+class ResolutionField {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResolutionField.class);
+
+	private static final String RESOLUTION_FIELD = "resolution";
+
+	/**
+	 * Null values for the classes without resolution field.
+	 */
+	private final Map<Class<?>, Field> fields = new HashMap<Class<?>, Field>();
+
+	/**
+	 * @return The number of issues whose resolution has been set.
+	 */
+	int setAll(Collection<?> issues, String resolution) {
+		int count = 0;
+		Class<?> issueClass = null;
+		Field field = null;
+		for (Object issue : issues) {
+			// Issues are usually all of the same class.
+			if (issue.getClass() != issueClass) {
+				issueClass = issue.getClass();
+				field = getField(issueClass);
+			}
+			if (field != null) {
+				try {
+					field.set(issue, resolution);
+					++count;
+				} catch (IllegalAccessException e) {
+					logger.error("Can't access resolution field for the issue", e);
+				}
+			}
+		}
+		return count;
+	}
+
+	private Field getField(Class<?> issueClass) {
+		if (fields.containsKey(issueClass)) {
+			return fields.get(issueClass);
+		}
+		Field field = null;
+		for (Class<?> type = issueClass; type != null && field == null; type = type.getSuperclass()) {
+			try {
+				field = type.getDeclaredField(RESOLUTION_FIELD);
+			} catch (NoSuchFieldException e) {
+				// Maybe in a super class.
+			}
+		}
+		if (field == null) {
+			logger.error("Issues of class {} don't have a resolution field: "
+			        + "false positive violations will be reported as open issues.", issueClass.getName());
+		} else {
+			try {
+				field.setAccessible(true);
+			} catch (SecurityException e) {
+				logger.error("Security problem when managing resolution field of an issue: "
+				        + "false positive violations will be reported as open issues.", e);
+				field = null;
+			}
+		}
+		fields.put(issueClass, field);
+		return field;
+	}
+}
@@ -0,0 +1,163 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.Resource;
+
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+import com.thalesgroup.sonar.plugins.tusar.sensors.AbstractSensor.MeasuresComputation;
+
+/**
+ * Runs the per-resource measure computations of a sensor on a pool of worker
+ * threads. The computations are expected to be pure: resolving resources or
+ * reading measures still needs to be done beforehand since the
+ * {@link SensorContext} is not meant to be shared between threads.
+ *
+ * The computed measures are handed over to a single sink, always called from
+ * the analysis thread and in the submission order, which keeps the resulting
+ * injection identical to a sequential run. The number of pending computations
+ * is bounded to apply some back pressure on the analysis thread (and on the
+ * memory).
+ *
+ * A failing computation is logged and its resource skipped, whereas a failing
+ * sink fails the analysis, whatever the parallelism.
+ */
+class ResourcePipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResourcePipeline.class);
+
+	private static final int PENDING_COMPUTATIONS_PER_WORKER = 16;
+
+	interface Sink {
+
+		void accept(Report report, Resource resource, Collection<Measure> measures);
+	}
+
+	private static class PendingComputation {
+
+		private final Report report;
+
+		private final Resource resource;
+
+		private final Future<Collection<Measure>> measures;
+
+		private PendingComputation(Report report, Resource resource, Future<Collection<Measure>> measures) {
+			this.report = report;
+			this.resource = resource;
+			this.measures = measures;
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "tusar-worker-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private final Sink sink;
+
+	private final int parallelism;
+
+	/**
+	 * Created on the first submission, since most sensors never submit any
+	 * computation. Always null when running sequentially.
+	 */
+	private ExecutorService executor;
+
+	private final int maxPendingComputations;
+
+	private final LinkedList<PendingComputation> pendingComputations = new LinkedList<PendingComputation>();
+
+	/**
+	 * @param parallelism
+	 *            The number of worker threads. Any value lower than 2 means
+	 *            that the computations are directly executed by the analysis
+	 *            thread.
+	 */
+	ResourcePipeline(int parallelism, Sink sink) {
+		this.sink = sink;
+		this.parallelism = parallelism;
+		maxPendingComputations = parallelism > 1 ? parallelism * PENDING_COMPUTATIONS_PER_WORKER : 0;
+	}
+
+	void submit(Report report, Resource resource, final MeasuresComputation computation) {
+		if (parallelism > 1) {
+			if (executor == null) {
+				logger.debug("Computing TUSAR measures using {} worker threads", parallelism);
+				executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory());
+			}
+			while (pendingComputations.size() >= maxPendingComputations) {
+				acceptNext();
+			}
+			Future<Collection<Measure>> measures = executor.submit(new Callable<Collection<Measure>>() {
+
+				@Override
+				public Collection<Measure> call() throws Exception {
+					return computation.compute();
+				}
+			});
+			pendingComputations.add(new PendingComputation(report, resource, measures));
+		} else {
+			Collection<Measure> measures;
+			try {
+				measures = computation.compute();
+			} catch (Exception e) {
+				logger.error("Failed to compute TUSAR measures for resource " + resource, e);
+				return;
+			}
+			sink.accept(report, resource, measures);
+		}
+	}
+
+	/**
+	 * Wait for every pending computation and hand over its result to the sink.
+	 */
+	void flush() {
+		while (!pendingComputations.isEmpty()) {
+			acceptNext();
+		}
+	}
+
+	void shutdown() {
+		try {
+			flush();
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private void acceptNext() {
+		PendingComputation pendingComputation = pendingComputations.removeFirst();
+		Collection<Measure> measures;
+		try {
+			measures = pendingComputation.measures.get();
+		} catch (ExecutionException e) {
+			logger.error("Failed to compute TUSAR measures for resource " + pendingComputation.resource, e.getCause());
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for TUSAR measures computation", e);
+		}
+		sink.accept(pendingComputation.report, pendingComputation.resource, measures);
+	}
+}
@@ -0,0 +1,101 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The K slowest test cases, kept in a bounded min-heap whose root is the
+ * fastest of the slowest ones, so that most test cases are rejected by a
+ * single comparison and the others cost O(log K).
+ */
+class SlowestTests {
+
+	private static class TestCase implements Comparable<TestCase> {
+
+		private final String name;
+
+		private final int timeMS;
+
+		private TestCase(String name, int timeMS) {
+			this.name = name;
+			this.timeMS = timeMS;
+		}
+
+		/**
+		 * By duration, then by name for a stable output.
+		 */
+		@Override
+		public int compareTo(TestCase other) {
+			if (timeMS != other.timeMS) {
+				return timeMS < other.timeMS ? -1 : 1;
+			}
+			return other.name.compareTo(name);
+		}
+	}
+
+	private final int capacity;
+
+	private final PriorityQueue<TestCase> heap;
+
+	/**
+	 * @param capacity
+	 *            The K of the top-K, 0 to keep nothing.
+	 */
+	SlowestTests(int capacity) {
+		this.capacity = Math.max(capacity, 0);
+		this.heap = new PriorityQueue<TestCase>(Math.max(this.capacity, 1));
+	}
+
+	void add(String name, int timeMS) {
+		if (heap.size() < capacity) {
+			heap.add(new TestCase(name != null ? name : "", timeMS));
+		} else if (capacity > 0 && timeMS > heap.peek().timeMS) {
+			heap.poll();
+			heap.add(new TestCase(name != null ? name : "", timeMS));
+		}
+	}
+
+	/**
+	 * @param prefix
+	 *            Prepended to the names of the other test cases, such as
+	 *            their test suite.
+	 */
+	void addAll(SlowestTests other, String prefix) {
+		for (TestCase testCase : other.heap) {
+			add(prefix + testCase.name, testCase.timeMS);
+		}
+	}
+
+	boolean isEmpty() {
+		return heap.isEmpty();
+	}
+
+	/**
+	 * @return "duration=name" pairs separated by ';', the slowest first.
+	 *         Semicolons in the names are replaced by commas.
+	 */
+	String encode() {
+		List<TestCase> testCases = new ArrayList<TestCase>(heap);
+		Collections.sort(testCases, Collections.reverseOrder());
+		StringBuilder buffer = new StringBuilder();
+		for (TestCase testCase : testCases) {
+			if (buffer.length() > 0) {
+				buffer.append(';');
+			}
+			buffer.append(testCase.timeMS).append('=').append(testCase.name.replace(';', ','));
+		}
+		return buffer.toString();
+	}
+
+	static SlowestTests decode(String value) {
+		String[] pairs = value.length() > 0 ? value.split(";") : new String[0];
+		SlowestTests slowestTests = new SlowestTests(pairs.length);
+		for (String pair : pairs) {
+			int separator = pair.indexOf('=');
+			slowestTests.add(pair.substring(separator + 1), Integer.parseInt(pair.substring(0, separator)));
+		}
+		return slowestTests;
+	}
+}
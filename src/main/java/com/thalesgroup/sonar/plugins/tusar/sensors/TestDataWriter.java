@@ -0,0 +1,156 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Write the TEST_DATA of a test suite while its test cases are walked,
+ * escaping the values straight into the output buffer (the same way as
+ * {@link StringEscapeUtils#escapeXml(String)} does) instead of keeping the
+ * details of every test case until the end.
+ *
+ * The stack traces are the bulk of the data: each one is truncated to a
+ * maximum length and only the first ones of a suite are kept, the error
+ * messages being always written.
+ */
+class TestDataWriter {
+
+	private static final String TRUNCATED = "\n...";
+
+	private static final String START = "<tests-details>";
+
+	private static final String END = "</tests-details>";
+
+	private static final String CDATA_START = "<![CDATA[";
+
+	private static final String CDATA_END = "]]>";
+
+	private final int maxStackTraceLength;
+
+	private final int maxStackTraces;
+
+	private final StringBuilder buffer = new StringBuilder();
+
+	private int stackTraces;
+
+	/**
+	 * @param maxStackTraceLength
+	 *            Negative for no limit.
+	 * @param maxStackTraces
+	 *            Per suite, negative for no limit.
+	 */
+	TestDataWriter(int maxStackTraceLength, int maxStackTraces) {
+		this.maxStackTraceLength = maxStackTraceLength;
+		this.maxStackTraces = maxStackTraces;
+	}
+
+	/**
+	 * @return A textual form of the limits, which the written data depends on.
+	 */
+	String getLimits() {
+		return maxStackTraceLength + "/" + maxStackTraces;
+	}
+
+	TestDataWriter start() {
+		buffer.setLength(0);
+		stackTraces = 0;
+		buffer.append(START);
+		return this;
+	}
+
+	/**
+	 * Append the test cases of some data previously written by a writer, the
+	 * stack traces beyond the maximum count being dropped. The stack traces
+	 * are the content of the CDATA sections, which can't be confused with
+	 * anything else since '&gt;' is escaped.
+	 */
+	void append(String testData) {
+		int start = testData.startsWith(START) ? START.length() : 0;
+		int end = testData.endsWith(END) ? testData.length() - END.length() : testData.length();
+		int from = start;
+		int cdataStart;
+		while ((cdataStart = testData.indexOf(CDATA_START, from)) >= 0 && cdataStart < end) {
+			int contentStart = cdataStart + CDATA_START.length();
+			int contentEnd = testData.indexOf(CDATA_END, contentStart);
+			if (contentEnd < 0) {
+				break;
+			}
+			buffer.append(testData, from, contentStart);
+			if (contentEnd > contentStart && (maxStackTraces < 0 || stackTraces < maxStackTraces)) {
+				++stackTraces;
+				buffer.append(testData, contentStart, contentEnd);
+			}
+			from = contentEnd;
+		}
+		buffer.append(testData, from, end);
+	}
+
+	void writeTestCase(String status, int timeMS, String name) {
+		writeTestCaseStart(status, timeMS, name);
+		buffer.append("/>");
+	}
+
+	/**
+	 * @param error
+	 *            Whether it is an error rather than a failure.
+	 */
+	void writeFailedTestCase(String status, int timeMS, String name, boolean error, String message,
+	        String stackTrace) {
+		writeTestCaseStart(status, timeMS, name);
+		buffer.append('>').append(error ? "<error message=\"" : "<failure message=\"");
+		escape(message, 0, message != null ? message.length() : 0);
+		buffer.append("\"><![CDATA[");
+		if (stackTrace != null && (maxStackTraces < 0 || stackTraces < maxStackTraces)) {
+			++stackTraces;
+			if (maxStackTraceLength < 0 || stackTrace.length() <= maxStackTraceLength) {
+				escape(stackTrace, 0, stackTrace.length());
+			} else {
+				escape(stackTrace, 0, maxStackTraceLength);
+				buffer.append(TRUNCATED);
+			}
+		}
+		buffer.append("]]>").append(error ? "</error>" : "</failure>").append("</testcase>");
+	}
+
+	String finish() {
+		buffer.append(END);
+		String testData = buffer.toString();
+		buffer.setLength(0);
+		return testData;
+	}
+
+	private void writeTestCaseStart(String status, int timeMS, String name) {
+		buffer.append("<testcase status=\"").append(status).append("\" time=\"").append(timeMS)
+		        .append("\" name=\"");
+		escape(name, 0, name != null ? name.length() : 0);
+		buffer.append('"');
+	}
+
+	private void escape(String value, int start, int end) {
+		for (int i = start; i < end; ++i) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				buffer.append("&amp;");
+				break;
+			case '<':
+				buffer.append("&lt;");
+				break;
+			case '>':
+				buffer.append("&gt;");
+				break;
+			case '"':
+				buffer.append("&quot;");
+				break;
+			case '\'':
+				buffer.append("&apos;");
+				break;
+			default:
+				if (c > 0x7f) {
+					buffer.append("&#").append((int) c).append(';');
+				} else {
+					buffer.append(c);
+				}
+			}
+		}
+	}
+}
@@ -1,8 +1,5 @@
 package com.thalesgroup.sonar.plugins.tusar.sensors;
 
-import java.util.ArrayList;
-import java.util.List;
-
 class TestSuiteReport {
 
 	private String path;
@@ -13,12 +10,51 @@ class TestSuiteReport {
 	private int failures;
 	private boolean isTestSuite;
 
-	private List<TestCaseDetails> details = new ArrayList<TestCaseDetails>();
+	private String testData;
+
+	private DurationSketch durations = new DurationSketch();
+
+	private SlowestTests slowestTests = new SlowestTests(0);
 
 	public TestSuiteReport(String path) {
 		this.path = path;
 	}
 
+	/**
+	 * Restore a test suite report from its (detail-less) fields.
+	 */
+	public TestSuiteReport(String path, String[] fields) {
+		this.path = path;
+		this.tests = Integer.parseInt(fields[0]);
+		this.errors = Integer.parseInt(fields[1]);
+		this.failures = Integer.parseInt(fields[2]);
+		this.skipped = Integer.parseInt(fields[3]);
+		this.timeMS = Integer.parseInt(fields[4]);
+		this.testData = fields[5];
+		this.durations = DurationSketch.decode(fields[6]);
+		this.slowestTests = SlowestTests.decode(fields[7]);
+	}
+
+	/**
+	 * Add the counters, durations and slowest test cases of another report
+	 * of the same test suite, the test data being left to the caller.
+	 */
+	public void merge(TestSuiteReport other) {
+		tests += other.tests;
+		errors += other.errors;
+		failures += other.failures;
+		skipped += other.skipped;
+		timeMS += other.timeMS;
+		durations.merge(other.durations);
+		slowestTests.addAll(other.slowestTests, "");
+	}
+
+	public String[] toFields() {
+		return new String[] { Integer.toString(tests), Integer.toString(errors), Integer.toString(failures),
+		        Integer.toString(skipped), Integer.toString(timeMS), testData, durations.encode(),
+		        slowestTests.encode() };
+	}
+
 	public String getPath() {
 		return path;
 	}
@@ -63,12 +99,24 @@ class TestSuiteReport {
 		this.failures = failures;
 	}
 
-	public List<TestCaseDetails> getDetails() {
-		return details;
+	public String getTestData() {
+		return testData;
+	}
+
+	public void setTestData(String testData) {
+		this.testData = testData;
+	}
+
+	public DurationSketch getDurations() {
+		return durations;
+	}
+
+	public SlowestTests getSlowestTests() {
+		return slowestTests;
 	}
 
-	public void setDetails(List<TestCaseDetails> details) {
-		this.details = details;
+	public void setSlowestTests(SlowestTests slowestTests) {
+		this.slowestTests = slowestTests;
 	}
 
 	public boolean isTestSuite() {
@@ -3,26 +3,37 @@ package com.thalesgroup.sonar.plugins.tusar.sensors;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.PropertyType;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MetricFinder;
-import org.sonar.api.measures.PersistenceMode;
-import org.sonar.api.measures.PropertiesBuilder;
+import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.utils.ParsingUtils;
 
+import com.thalesgroup.sonar.plugins.tusar.metrics.PerTestCoverageMetrics;
+import com.thalesgroup.sonar.plugins.tusar.reports.DigestStore;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReferenceExtractor;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportPreprocessor;
 import com.thalesgroup.tusar.coverage.v5.CoverageComplexType;
 import com.thalesgroup.tusar.generic_branch_coverage.v1.GenericBranchCoverageComplexType;
 import com.thalesgroup.tusar.line_coverage.v1.LineCoverageComplexType;
@@ -66,179 +77,582 @@ public class TusarCoverageSensor extends AbstractSensor {
 		}
 	};
 
+	public static final PropertyDefinition TUSAR_COVERAGE_MERGE_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.coverageMerge")
+	        .subCategory("Reports")
+	        .name("Merge coverage reports")
+	        .description(
+	                "Merge, line by line, the coverage found in several reports for the same file "
+	                        + "(line hits being summed) instead of keeping the last report only.") //
+	        .type(PropertyType.BOOLEAN) //
+	        .defaultValue("false") //
+	        .hidden() // Read by the report preprocessing, from the batch settings
+	        .build();
+
+	public static final PropertyDefinition TUSAR_PER_TEST_COVERAGE_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.perTestCoverage")
+	        .subCategory("Reports")
+	        .name("Per test coverage")
+	        .description(
+	                "Consider the line coverage of each report as the coverage of a single test "
+	                        + "in order to measure how many tests cover each file and its lines.") //
+	        .type(PropertyType.BOOLEAN) //
+	        .defaultValue("false") //
+	        .onQualifiers(Qualifiers.PROJECT, Qualifiers.MODULE) //
+	        .build();
+
+	private static final String LINE_COVERAGE_SECTION = "line-coverage";
+
+	private static final String BRANCH_COVERAGE_SECTION = "branch-coverage";
+
+	static final ReportPreprocessor<CoverageData> coveragePreprocessor = new ReportPreprocessor<CoverageData>() {
+
+		@Override
+		public CoverageData preprocess(Report report, Settings batchSettings, DigestStore digests) {
+			CoverageData data = new CoverageData();
+			CoverageComplexType coverage = report.model.getCoverage();
+			// Merged coverage is directly computed by the sensor.
+			data.leftToMerge = batchSettings.getBoolean(TUSAR_COVERAGE_MERGE_PROPERTY.key());
+			if (coverage != null && !data.leftToMerge) {
+				String reportPath = report.location.getPath();
+				DigestStore.Digest digest = digests.isEnabled() ? digests.newDigest() : null;
+
+				LineCoverageComplexType lineCoverage = coverage.getLineCoverage();
+				if (lineCoverage != null) {
+					for (LineCoverageComplexType.File file : lineCoverage.getFile()) {
+						try {
+							data.lineCoverages.add(getLineCoverage(file, reportPath, digests, digest));
+						} catch (ParseException e) {
+							logger.error("Failed to extract coverage data", e);
+						}
+					}
+				}
+
+				// Only one conditional coverage can be processed at a time
+				// Order of processing : MC/DC, Multi-condition,
+				// Condition-decision, Condition, Branch, Decision
+				List<GenericBranchCoverageComplexType> genericBranchCoverages = getGenericBranchCoverages(coverage);
+				for (GenericBranchCoverageComplexType genericBranchCoverage : genericBranchCoverages) {
+					if (genericBranchCoverage != null) {
+						for (GenericBranchCoverageComplexType.Resource path : genericBranchCoverage.getResource()) {
+							if (ReferenceExtractor.FILE_RESSOURCE_TYPE.equalsIgnoreCase(path.getType())) {
+								try {
+									data.branchCoverages.add(getGenericBranchCoverage(path, reportPath, digests,
+									        digest));
+								} catch (ParseException e) {
+									logger.error("Failed to extract coverage data", e);
+								}
+							}
+						}
+						break;
+					}
+				}
+			}
+			return data;
+		}
+	};
+
+	/**
+	 * Reused by each thread preprocessing reports.
+	 */
+	private static final ThreadLocal<LineDataBuilder[]> lineDataBuilders = new ThreadLocal<LineDataBuilder[]>() {
+
+		@Override
+		protected LineDataBuilder[] initialValue() {
+			return new LineDataBuilder[] { new LineDataBuilder(), new LineDataBuilder(), new LineDataBuilder() };
+		}
+	};
+
+	/**
+	 * The line hits strings and their kind are computed in background as soon
+	 * as the reports are loaded.
+	 */
+	public static ReportPreprocessor<?> preprocessor = coveragePreprocessor;
+
 	private boolean lineCoverageInTusar;
 
+	/**
+	 * Null when not available, the resource tree being walked instead.
+	 */
+	private FileSystem fileSystem;
+
+	/*
+	 * Files which have received coverage measures, and hence don't need to be
+	 * set to zero.
+	 */
+
+	private final Set<Resource> lineCoveredFiles = new HashSet<Resource>();
+
+	private final Set<Resource> branchCoveredFiles = new HashSet<Resource>();
+
 	public TusarCoverageSensor(Settings settings, MetricFinder metricFinder) {
 		super(settings, metricFinder);
 	}
 
+	public TusarCoverageSensor(Settings settings, MetricFinder metricFinder, FileSystem fileSystem) {
+		this(settings, metricFinder);
+		this.fileSystem = fileSystem;
+	}
+
 	@Override
 	public void analyse(Project project, SensorContext sensorContext) {
+		lineCoverageInTusar = false;
+		lineCoveredFiles.clear();
+		branchCoveredFiles.clear();
+
 		super.analyse(project, sensorContext);
 
-		// Set the coverage of files without coverage metrics
-		if (lineCoverageInTusar) {
-			setLineCoverageToZero(project, sensorContext);
+		Iterable<Resource> files;
+		if (fileSystem != null) {
+			files = getIndexedFiles(project, sensorContext);
+		} else {
+			List<Resource> collectedFiles = new ArrayList<Resource>();
+			collectFiles(project, sensorContext, collectedFiles);
+			files = collectedFiles;
+		}
+
+		for (Resource file : files) {
+			// Set the coverage of files without coverage metrics
+			if (lineCoverageInTusar && !lineCoveredFiles.contains(file)) {
+				setLineCoverageToZero(file, sensorContext);
+			}
+
+			// We have to execute this method all the time because if the
+			// metric "conditions_to_cover" have been previously injected,
+			// Sonar will automatically set to 100% the branch coverage
+			if (!branchCoveredFiles.contains(file)) {
+				setGenericBranchCoverageToZero(file, sensorContext);
+			}
+		}
+
+		lineCoveredFiles.clear();
+		branchCoveredFiles.clear();
+	}
+
+	private List<Resource> getIndexedFiles(Project project, SensorContext sensorContext) {
+		List<Resource> files = new ArrayList<Resource>();
+		for (InputFile inputFile : fileSystem.inputFiles(fileSystem.predicates().all())) {
+			Resource file = sensorContext.getResource(File.fromIOFile(inputFile.file(), project));
+			if (file != null) {
+				files.add(file);
+			}
 		}
+		return files;
+	}
 
-		// We have to execute this method all the time because if the metric
-		// "conditions_to_cover" have been previously injected,
-		// Sonar will automatically set to 100% the branch coverage
-		setGenericBranchCoverageToZero(project, sensorContext);
+	/**
+	 * Fallback when the file system is not available.
+	 */
+	private static void collectFiles(Resource resource, SensorContext sensorContext, List<Resource> files) {
+		for (Resource child : sensorContext.getChildren(resource)) {
+			if (child.getScope() == Qualifiers.FILE) {
+				files.add(child);
+			}
+			collectFiles(child, sensorContext, files);
+		}
 	}
 
 	@Override
 	protected void internalAnalyse(Context context) {
+		if (isMergeEnabled(context)) {
+			mergeCoverage(context);
+		} else {
+			for (ReportExtractor.Report report : context.getReports()) {
+				logger.debug("Injecting data from report '{}'", report.location);
+				context.report(report);
+				CoverageData coverage = context.getPreprocessed(coveragePreprocessor);
+				if (coverage != null) {
+					processLineCoverage(context, coverage.lineCoverages);
+					processGenericBranchCoverage(context, coverage.branchCoverages);
+				}
+			}
+		}
+		if (getSettings().getBoolean(TUSAR_PER_TEST_COVERAGE_PROPERTY.key())) {
+			computePerTestCoverage(context);
+		}
+	}
+
+	/**
+	 * The coverage is merged as soon as the preprocessing didn't compute it,
+	 * even if the module settings disagree with the batch ones.
+	 */
+	private boolean isMergeEnabled(Context context) {
+		if (getSettings().getBoolean(TUSAR_COVERAGE_MERGE_PROPERTY.key())) {
+			return true;
+		}
 		for (ReportExtractor.Report report : context.getReports()) {
-			logger.debug("Injecting data from report '{}'", report.location);
 			context.report(report);
-			try {
-				CoverageComplexType coverage = report.model.getCoverage();
-				if (coverage != null) {
+			CoverageData coverage = context.getPreprocessed(coveragePreprocessor);
+			if (coverage != null && coverage.leftToMerge) {
+				logger.warn("Merging coverage reports as set by the batch settings, "
+				        + "'{}' being ignored at the module level", TUSAR_COVERAGE_MERGE_PROPERTY.key());
+				return true;
+			}
+		}
+		return false;
+	}
 
-					LineCoverageComplexType lineCoverage = coverage.getLineCoverage();
-					if (lineCoverage != null) {
-						processLineCoverage(context, lineCoverage);
-					}
+	/**
+	 * Each report is a test: its covered lines are gathered per file, then
+	 * folded into the per file results before moving to the next report, so
+	 * that the covered lines of a test are never kept longer than needed.
+	 */
+	private void computePerTestCoverage(Context context) {
+		Map<String, Resource> resourcesByPath = new HashMap<String, Resource>();
+		Map<Resource, PerTestCoverage> perTestCoverages = new LinkedHashMap<Resource, PerTestCoverage>();
+		Map<Resource, LineRanges> testCoverage = new HashMap<Resource, LineRanges>();
 
-					// Only one conditional coverage can be processed at a time
-					// Order of processing : MC/DC, Multi-condition,
-					// Condition-decision, Condition, Branch, Decision
-					List<GenericBranchCoverageComplexType> genericBranchCoverages = getGenericBranchCoverages(coverage);
-					for (GenericBranchCoverageComplexType genericBranchCoverage : genericBranchCoverages) {
-						if (genericBranchCoverage != null) {
-							processGenericBranchCoverage(context, genericBranchCoverage);
-							break;
+		for (ReportExtractor.Report report : context.getReports()) {
+			CoverageComplexType coverage = report.model.getCoverage();
+			if (coverage == null || coverage.getLineCoverage() == null) {
+				continue;
+			}
+			logger.debug("Computing the coverage of test '{}'", report.location.getName());
+
+			testCoverage.clear();
+			for (LineCoverageComplexType.File file : coverage.getLineCoverage().getFile()) {
+				Resource resource = resolveResource(context, file.getPath(), resourcesByPath);
+				if (resource != null) {
+					// A file can appear more than once in a report.
+					LineRanges coveredLines = testCoverage.get(resource);
+					if (coveredLines == null) {
+						coveredLines = new LineRanges();
+						testCoverage.put(resource, coveredLines);
+					}
+					try {
+						for (LineCoverageComplexType.File.Line line : file.getLine()) {
+							if (NumberDecoder.decodeCount(line.getHits()) > 0) {
+								coveredLines.add(parseLineNumber(line.getNumber()), 1);
+							}
 						}
+					} catch (ParseException e) {
+						logger.error("Failed to extract coverage data", e);
 					}
 				}
-			} catch (ParseException e) {
-				logger.error("Failed to extract coverage data", e);
 			}
+
+			for (Map.Entry<Resource, LineRanges> entry : testCoverage.entrySet()) {
+				PerTestCoverage perTestCoverage = perTestCoverages.get(entry.getKey());
+				if (perTestCoverage == null) {
+					perTestCoverage = new PerTestCoverage(report, entry.getKey());
+					perTestCoverages.put(entry.getKey(), perTestCoverage);
+				}
+				perTestCoverage.addTest(entry.getValue());
+			}
+		}
+		testCoverage.clear();
+
+		for (PerTestCoverage perTestCoverage : perTestCoverages.values()) {
+			context.report(perTestCoverage.report).resource(perTestCoverage.resource);
+			context.injectMeasure(PerTestCoverageMetrics.COVERING_TESTS, perTestCoverage.getTestCount());
+			context.injectMeasure(PerTestCoverageMetrics.SINGLE_TEST_COVERED_LINES,
+			        perTestCoverage.getSingleTestCoveredLines());
+			context.injectMeasure(PerTestCoverageMetrics.MULTIPLE_TESTS_COVERED_LINES,
+			        perTestCoverage.getMultipleTestsCoveredLines());
 		}
 	}
 
-	private void processGenericBranchCoverage(Context context, GenericBranchCoverageComplexType genericBranchCoverage)
-	        throws ParseException {
-		for (GenericBranchCoverageComplexType.Resource path : genericBranchCoverage.getResource()) {
-			if (ReferenceExtractor.FILE_RESSOURCE_TYPE.equalsIgnoreCase(path.getType())) {
-				Resource resource = context.resolveResource(path.getFullname());
-				if (resource != null) {
-					context.resource(resource);
-					double conditionsToCover = 0;
-					double uncoveredConditions = 0;
-					PropertiesBuilder<String, Integer> conditionsByLine = new PropertiesBuilder<String, Integer>(
-					        CoreMetrics.CONDITIONS_BY_LINE);
-					PropertiesBuilder<String, Integer> coveredConditionsByLine = new PropertiesBuilder<String, Integer>(
-					        CoreMetrics.COVERED_CONDITIONS_BY_LINE);
-					PropertiesBuilder<String, Integer> lineHitsBuilder = new PropertiesBuilder<String, Integer>(
-					        CoreMetrics.COVERAGE_LINE_HITS_DATA);
-
-					for (GenericBranchCoverageComplexType.Resource.Line line : path.getLine()) {
-						int numberOfBranches = (int) ParsingUtils.parseNumber(line.getNumberOfBranches(),
-						        Locale.ENGLISH);
-						int uncoveredBranches = (int) ParsingUtils.parseNumber(line.getUncoveredBranches(),
-						        Locale.ENGLISH);
-
-						conditionsToCover += numberOfBranches;
-						uncoveredConditions += uncoveredBranches;
-
-						conditionsByLine.add(line.getNumber(), numberOfBranches);
-						coveredConditionsByLine.add(line.getNumber(), numberOfBranches - uncoveredBranches);
-						lineHitsBuilder.add(line.getNumber(), 1);
+	/**
+	 * Merge the coverage of all the reports line by line, then inject it once
+	 * per file, attributed to the first report covering the file.
+	 */
+	private void mergeCoverage(Context context) {
+		Map<String, Resource> resourcesByPath = new HashMap<String, Resource>();
+		Map<Resource, MergedCoverage> mergedCoverages = new LinkedHashMap<Resource, MergedCoverage>();
 
+		for (ReportExtractor.Report report : context.getReports()) {
+			logger.debug("Merging coverage from report '{}'", report.location);
+			CoverageComplexType coverage = report.model.getCoverage();
+			if (coverage == null) {
+				continue;
+			}
+
+			LineCoverageComplexType lineCoverage = coverage.getLineCoverage();
+			if (lineCoverage != null) {
+				for (LineCoverageComplexType.File file : lineCoverage.getFile()) {
+					lineCoverageInTusar = true;
+					MergedCoverage mergedCoverage = getMergedCoverage(context, report, file.getPath(),
+					        resourcesByPath, mergedCoverages);
+					if (mergedCoverage != null) {
+						try {
+							for (LineCoverageComplexType.File.Line line : file.getLine()) {
+								mergedCoverage.addLineHits(parseLineNumber(line.getNumber()),
+								        NumberDecoder.decodeCount(line.getHits()));
+							}
+						} catch (ParseException e) {
+							logger.error("Failed to extract coverage data", e);
+						}
 					}
+				}
+			}
 
-					Measure coverageLineHitsData = context.context().getMeasure(resource,
-					        CoreMetrics.COVERAGE_LINE_HITS_DATA);
-
-					context.injectMeasure(CoreMetrics.CONDITIONS_TO_COVER, conditionsToCover);
-					context.injectMeasure(CoreMetrics.UNCOVERED_CONDITIONS, uncoveredConditions);
-					context.injectMeasure(CoreMetrics.BRANCH_COVERAGE,
-					        calculatePercent(conditionsToCover - uncoveredConditions, conditionsToCover));
-					context.injectMeasure(conditionsByLine.build().setPersistenceMode(PersistenceMode.DATABASE));
-					context.injectMeasure(coveredConditionsByLine.build().setPersistenceMode(PersistenceMode.DATABASE));
-					if (coverageLineHitsData == null) {
-						context.injectMeasure(lineHitsBuilder.build());
+			for (GenericBranchCoverageComplexType genericBranchCoverage : getGenericBranchCoverages(coverage)) {
+				if (genericBranchCoverage != null) {
+					for (GenericBranchCoverageComplexType.Resource path : genericBranchCoverage.getResource()) {
+						if (ReferenceExtractor.FILE_RESSOURCE_TYPE.equalsIgnoreCase(path.getType())) {
+							MergedCoverage mergedCoverage = getMergedCoverage(context, report, path.getFullname(),
+							        resourcesByPath, mergedCoverages);
+							if (mergedCoverage != null) {
+								try {
+									for (GenericBranchCoverageComplexType.Resource.Line line : path.getLine()) {
+										int numberOfBranches = NumberDecoder.decodeCount(line.getNumberOfBranches());
+										int uncoveredBranches = NumberDecoder.decodeCount(line.getUncoveredBranches());
+										mergedCoverage.addConditions(parseLineNumber(line.getNumber()),
+										        numberOfBranches, numberOfBranches - uncoveredBranches);
+									}
+								} catch (ParseException e) {
+									logger.error("Failed to extract coverage data", e);
+								}
+							}
+						}
 					}
-				} else {
-					logger.info(path.getFullname() + " null");
+					break;
 				}
 			}
 		}
-		logger.info("End process gbc");
-	}
 
-	private void setGenericBranchCoverageToZero(Resource resource, SensorContext sensorContext) {
-		if (resource != null) {
-			for (Resource child : sensorContext.getChildren(resource)) {
-				setGenericBranchCoverageToZero(child, sensorContext);
-				if (child.getScope() == Qualifiers.FILE) {
-
-					Measure conditionsToCover = sensorContext.getMeasure(child, CoreMetrics.CONDITIONS_TO_COVER);
-					Measure branchCoverage = sensorContext.getMeasure(child, CoreMetrics.BRANCH_COVERAGE);
-					Measure uncoveredConditions = sensorContext.getMeasure(child, CoreMetrics.UNCOVERED_CONDITIONS);
-
-					if (branchCoverage == null && uncoveredConditions == null && conditionsToCover != null) {
-						double conditionsToCoverValue = conditionsToCover.getValue();
-						saveMeasure(sensorContext, child, new Measure(CoreMetrics.BRANCH_COVERAGE, 0.0));
-						saveMeasure(sensorContext, child, new Measure(CoreMetrics.UNCOVERED_CONDITIONS,
-						        conditionsToCoverValue));
-					}
+		LineDataBuilder builder = lineDataBuilders.get()[0];
+		for (MergedCoverage mergedCoverage : mergedCoverages.values()) {
+			context.report(mergedCoverage.report).resource(mergedCoverage.resource);
+			if (mergedCoverage.getRejectedLineCount() > 0) {
+				logger.warn("Ignored the coverage of {} lines beyond line {} for '{}'", new Object[] {
+				        mergedCoverage.getRejectedLineCount(), MergedCoverage.MAX_LINE, mergedCoverage.resource });
+			}
+
+			if (mergedCoverage.hasLineCoverage()) {
+				lineCoveredFiles.add(mergedCoverage.resource);
+				double lines = mergedCoverage.getLines();
+				double coveredLines = mergedCoverage.getCoveredLines();
+				context.injectMeasure(CoreMetrics.LINES_TO_COVER, lines);
+				context.injectMeasure(CoreMetrics.LINE_COVERAGE, calculatePercent(coveredLines, lines));
+				context.injectMeasure(CoreMetrics.UNCOVERED_LINES, lines - coveredLines);
+				context.injectMeasure(CoreMetrics.COVERAGE_LINE_HITS_DATA, mergedCoverage.getLineHitsData(builder));
+			}
+
+			if (mergedCoverage.hasBranchCoverage()) {
+				branchCoveredFiles.add(mergedCoverage.resource);
+				double conditionsToCover = mergedCoverage.getConditionsToCover();
+				double uncoveredConditions = mergedCoverage.getUncoveredConditions();
+				context.injectMeasure(CoreMetrics.CONDITIONS_TO_COVER, conditionsToCover);
+				context.injectMeasure(CoreMetrics.UNCOVERED_CONDITIONS, uncoveredConditions);
+				context.injectMeasure(CoreMetrics.BRANCH_COVERAGE,
+				        calculatePercent(conditionsToCover - uncoveredConditions, conditionsToCover));
+				context.injectMeasure(CoreMetrics.CONDITIONS_BY_LINE, mergedCoverage.getConditionsByLineData(builder));
+				context.injectMeasure(CoreMetrics.COVERED_CONDITIONS_BY_LINE,
+				        mergedCoverage.getCoveredConditionsByLineData(builder));
+				if (!mergedCoverage.hasLineCoverage()
+				        && context.context().getMeasure(mergedCoverage.resource,
+				                CoreMetrics.COVERAGE_LINE_HITS_DATA) == null) {
+					context.injectMeasure(new Measure(CoreMetrics.COVERAGE_LINE_HITS_DATA,
+					        mergedCoverage.getBranchLineHitsData(builder)));
 				}
 			}
 		}
 	}
 
-	private void processLineCoverage(Context context, LineCoverageComplexType lineCoverage) throws ParseException {
-		for (LineCoverageComplexType.File file : lineCoverage.getFile()) {
-			lineCoverageInTusar = true;
-			Resource resource = context.resolveResource(file.getPath());
+	private static MergedCoverage getMergedCoverage(Context context, Report report, String path,
+	        Map<String, Resource> resourcesByPath, Map<Resource, MergedCoverage> mergedCoverages) {
+		Resource resource = resolveResource(context, path, resourcesByPath);
+		if (resource == null) {
+			return null;
+		}
+		MergedCoverage mergedCoverage = mergedCoverages.get(resource);
+		if (mergedCoverage == null) {
+			mergedCoverage = new MergedCoverage(report, resource);
+			mergedCoverages.put(resource, mergedCoverage);
+		}
+		return mergedCoverage;
+	}
+
+	/**
+	 * Resolve each path once, unresolved paths included.
+	 */
+	private static Resource resolveResource(Context context, String path, Map<String, Resource> resourcesByPath) {
+		Resource resource;
+		if (resourcesByPath.containsKey(path)) {
+			resource = resourcesByPath.get(path);
+		} else {
+			resource = context.resolveResource(path);
+			resourcesByPath.put(path, resource);
+		}
+		return resource;
+	}
+
+	private void processGenericBranchCoverage(Context context, List<CoverageData.BranchCoverage> branchCoverages) {
+		for (CoverageData.BranchCoverage branchCoverage : branchCoverages) {
+			Resource resource = context.resolveResource(branchCoverage.path);
 			if (resource != null) {
 				context.resource(resource);
+				branchCoveredFiles.add(resource);
 
-				double lines = 0;
-				double coveredLines = 0;
-				PropertiesBuilder<String, Integer> lineHitsBuilder = new PropertiesBuilder<String, Integer>(
+				Measure coverageLineHitsData = context.context().getMeasure(resource,
 				        CoreMetrics.COVERAGE_LINE_HITS_DATA);
 
-				for (LineCoverageComplexType.File.Line line : file.getLine()) {
-					lines++;
-					int hits = (int) ParsingUtils.parseNumber(line.getHits(), Locale.ENGLISH);
-					if (hits > 0) {
-						coveredLines++;
-					}
-					lineHitsBuilder.add(line.getNumber(), hits);
+				double conditionsToCover = branchCoverage.conditionsToCover;
+				double uncoveredConditions = branchCoverage.uncoveredConditions;
+				context.injectMeasure(CoreMetrics.CONDITIONS_TO_COVER, conditionsToCover);
+				context.injectMeasure(CoreMetrics.UNCOVERED_CONDITIONS, uncoveredConditions);
+				context.injectMeasure(CoreMetrics.BRANCH_COVERAGE,
+				        calculatePercent(conditionsToCover - uncoveredConditions, conditionsToCover));
+				context.injectMeasure(CoreMetrics.CONDITIONS_BY_LINE, branchCoverage.conditionsByLineData);
+				context.injectMeasure(CoreMetrics.COVERED_CONDITIONS_BY_LINE,
+				        branchCoverage.coveredConditionsByLineData);
+				if (coverageLineHitsData == null) {
+					context.injectMeasure(new Measure(CoreMetrics.COVERAGE_LINE_HITS_DATA, branchCoverage.lineHitsData));
 				}
+			} else {
+				logger.info(branchCoverage.path + " null");
+			}
+		}
+		if (!branchCoverages.isEmpty()) {
+			logger.info("End process gbc");
+		}
+	}
 
+	/**
+	 * @param digest
+	 *            Null if the digests are disabled.
+	 */
+	private static CoverageData.BranchCoverage getGenericBranchCoverage(GenericBranchCoverageComplexType.Resource path,
+	        String reportPath, DigestStore digests, DigestStore.Digest digest) throws ParseException {
+		String pathDigest = null;
+		if (digest != null) {
+			for (GenericBranchCoverageComplexType.Resource.Line line : path.getLine()) {
+				digest.add(line.getNumber()).add(line.getNumberOfBranches()).add(line.getUncoveredBranches());
+			}
+			pathDigest = digest.finish();
+			String[] fields = digests.reuse(BRANCH_COVERAGE_SECTION, reportPath, path.getFullname(), pathDigest);
+			if (fields != null) {
+				return new CoverageData.BranchCoverage(path.getFullname(), fields);
+			}
+		}
+		CoverageData.BranchCoverage branchCoverage = computeGenericBranchCoverage(path);
+		digests.store(BRANCH_COVERAGE_SECTION, reportPath, path.getFullname(), pathDigest, branchCoverage.toFields());
+		return branchCoverage;
+	}
+
+	private static CoverageData.BranchCoverage computeGenericBranchCoverage(
+	        GenericBranchCoverageComplexType.Resource path) throws ParseException {
+		double conditionsToCover = 0;
+		double uncoveredConditions = 0;
+		LineDataBuilder[] builders = lineDataBuilders.get();
+		LineDataBuilder conditionsByLine = builders[0].clear();
+		LineDataBuilder coveredConditionsByLine = builders[1].clear();
+		LineDataBuilder lineHitsBuilder = builders[2].clear();
+
+		for (GenericBranchCoverageComplexType.Resource.Line line : path.getLine()) {
+			int number = parseLineNumber(line.getNumber());
+			int numberOfBranches = NumberDecoder.decodeCount(line.getNumberOfBranches());
+			int uncoveredBranches = NumberDecoder.decodeCount(line.getUncoveredBranches());
+
+			conditionsToCover += numberOfBranches;
+			uncoveredConditions += uncoveredBranches;
+
+			conditionsByLine.add(number, numberOfBranches);
+			coveredConditionsByLine.add(number, numberOfBranches - uncoveredBranches);
+			lineHitsBuilder.add(number, 1);
+
+		}
+
+		return new CoverageData.BranchCoverage(path.getFullname(), conditionsToCover, uncoveredConditions,
+		        conditionsByLine.build(), coveredConditionsByLine.build(), lineHitsBuilder.build());
+	}
+
+	/**
+	 * The measures are looked up in order of decreasing selectivity.
+	 */
+	private void setGenericBranchCoverageToZero(Resource file, SensorContext sensorContext) {
+		Measure conditionsToCover = sensorContext.getMeasure(file, CoreMetrics.CONDITIONS_TO_COVER);
+		if (conditionsToCover != null //
+		        && sensorContext.getMeasure(file, CoreMetrics.BRANCH_COVERAGE) == null //
+		        && sensorContext.getMeasure(file, CoreMetrics.UNCOVERED_CONDITIONS) == null) {
+			double conditionsToCoverValue = conditionsToCover.getValue();
+			saveMeasure(sensorContext, file, new Measure(CoreMetrics.BRANCH_COVERAGE, 0.0));
+			saveMeasure(sensorContext, file, new Measure(CoreMetrics.UNCOVERED_CONDITIONS, conditionsToCoverValue));
+		}
+	}
+
+	private void processLineCoverage(Context context, List<CoverageData.LineCoverage> lineCoverages) {
+		for (CoverageData.LineCoverage lineCoverage : lineCoverages) {
+			lineCoverageInTusar = true;
+			Resource resource = context.resolveResource(lineCoverage.path);
+			if (resource != null) {
+				context.resource(resource);
+				lineCoveredFiles.add(resource);
+
+				double lines = lineCoverage.lines;
+				double coveredLines = lineCoverage.coveredLines;
 				context.injectMeasure(CoreMetrics.LINES_TO_COVER, lines);
 				context.injectMeasure(CoreMetrics.LINE_COVERAGE, calculatePercent(coveredLines, lines));
 				context.injectMeasure(CoreMetrics.UNCOVERED_LINES, lines - coveredLines);
-				context.injectMeasure(lineHitsBuilder.build().setPersistenceMode(PersistenceMode.DATABASE));
+				context.injectMeasure(CoreMetrics.COVERAGE_LINE_HITS_DATA, lineCoverage.lineHitsData);
 			}
 		}
 	}
 
-	private void setLineCoverageToZero(Resource resource, SensorContext sensorContext) {
-		if (resource != null) {
-			for (Resource child : sensorContext.getChildren(resource)) {
-				setLineCoverageToZero(child, sensorContext);
-				if (child.getScope() == Qualifiers.FILE) {
-
-					Measure linesToCover = sensorContext.getMeasure(child, CoreMetrics.LINES_TO_COVER);
-					Measure lineCoverage = sensorContext.getMeasure(child, CoreMetrics.LINE_COVERAGE);
-					Measure uncoveredLines = sensorContext.getMeasure(child, CoreMetrics.UNCOVERED_LINES);
-					Measure statements = sensorContext.getMeasure(child, CoreMetrics.STATEMENTS);
-
-					if (lineCoverage == null && linesToCover == null && uncoveredLines == null && statements != null) {
-						double statementsValue = statements.getValue();
-						saveMeasure(sensorContext, child, new Measure(CoreMetrics.LINE_COVERAGE, 0.0));
-						saveMeasure(sensorContext, child, new Measure(CoreMetrics.LINES_TO_COVER, statementsValue));
-						saveMeasure(sensorContext, child, new Measure(CoreMetrics.UNCOVERED_LINES, statementsValue));
-					}
-				}
+	/**
+	 * @param digest
+	 *            Null if the digests are disabled.
+	 */
+	private static CoverageData.LineCoverage getLineCoverage(LineCoverageComplexType.File file, String reportPath,
+	        DigestStore digests, DigestStore.Digest digest) throws ParseException {
+		String fileDigest = null;
+		if (digest != null) {
+			// Every line is walked over anyway, a reuse only spares the decoding and the data building.
+			for (LineCoverageComplexType.File.Line line : file.getLine()) {
+				digest.add(line.getNumber()).add(line.getHits());
+			}
+			fileDigest = digest.finish();
+			String[] fields = digests.reuse(LINE_COVERAGE_SECTION, reportPath, file.getPath(), fileDigest);
+			if (fields != null) {
+				return new CoverageData.LineCoverage(file.getPath(), fields);
 			}
 		}
+		CoverageData.LineCoverage lineCoverage = computeLineCoverage(file);
+		digests.store(LINE_COVERAGE_SECTION, reportPath, file.getPath(), fileDigest, lineCoverage.toFields());
+		return lineCoverage;
+	}
+
+	private static CoverageData.LineCoverage computeLineCoverage(LineCoverageComplexType.File file)
+	        throws ParseException {
+		double lines = 0;
+		double coveredLines = 0;
+		LineDataBuilder lineHitsBuilder = lineDataBuilders.get()[0].clear();
+
+		for (LineCoverageComplexType.File.Line line : file.getLine()) {
+			lines++;
+			int hits = NumberDecoder.decodeCount(line.getHits());
+			if (hits > 0) {
+				coveredLines++;
+			}
+			lineHitsBuilder.add(parseLineNumber(line.getNumber()), hits);
+		}
+
+		return new CoverageData.LineCoverage(file.getPath(), lines, coveredLines, lineHitsBuilder.build());
+	}
+
+	private static int parseLineNumber(String number) throws ParseException {
+		try {
+			return Integer.parseInt(number.trim());
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid line number: " + number, 0);
+		}
+	}
+
+	/**
+	 * The measures are looked up in order of decreasing selectivity.
+	 */
+	private void setLineCoverageToZero(Resource file, SensorContext sensorContext) {
+		Measure statements = sensorContext.getMeasure(file, CoreMetrics.STATEMENTS);
+		if (statements != null //
+		        && sensorContext.getMeasure(file, CoreMetrics.LINE_COVERAGE) == null //
+		        && sensorContext.getMeasure(file, CoreMetrics.LINES_TO_COVER) == null //
+		        && sensorContext.getMeasure(file, CoreMetrics.UNCOVERED_LINES) == null) {
+			double statementsValue = statements.getValue();
+			saveMeasure(sensorContext, file, new Measure(CoreMetrics.LINE_COVERAGE, 0.0));
+			saveMeasure(sensorContext, file, new Measure(CoreMetrics.LINES_TO_COVER, statementsValue));
+			saveMeasure(sensorContext, file, new Measure(CoreMetrics.UNCOVERED_LINES, statementsValue));
+		}
 	}
 
 	private static List<GenericBranchCoverageComplexType> getGenericBranchCoverages(CoverageComplexType coverage) {
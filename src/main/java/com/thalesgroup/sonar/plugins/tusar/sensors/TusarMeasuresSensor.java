@@ -1,26 +1,29 @@
 package com.thalesgroup.sonar.plugins.tusar.sensors;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.PropertyType;
+import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
-import org.sonar.api.measures.Metric.Level;
 import org.sonar.api.measures.Metric.ValueType;
 import org.sonar.api.measures.MetricFinder;
-import org.sonar.api.measures.PersistenceMode;
+import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Resource;
 
+import com.thalesgroup.sonar.plugins.tusar.metrics.NewMetrics;
+import com.thalesgroup.sonar.plugins.tusar.reports.DigestStore;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReferenceExtractor;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor;
 import com.thalesgroup.tusar.duplications.v1.DuplicationsComplexType;
@@ -95,18 +98,92 @@ public class TusarMeasuresSensor extends AbstractSensor {
 		}
 	};
 
+	public static final PropertyDefinition TUSAR_DUPLICATIONS_MAX_DATA_SIZE_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.duplicationsMaxDataSize")
+	        .subCategory("Performance")
+	        .name("Duplications data maximal size")
+	        .description(
+	                "Maximal number of characters of the duplications data of a single file, 0 meaning unlimited. "
+	                        + "Larger data is compacted by keeping fewer duplicated parts per block.") //
+	        .type(PropertyType.INTEGER) //
+	        .defaultValue("5000000") //
+	        .onQualifiers(Qualifiers.PROJECT, Qualifiers.MODULE) //
+	        .build();
+
+	public static final PropertyDefinition TUSAR_ROLLUPS_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.rollups")
+	        .subCategory("Performance")
+	        .name("Aggregate new metrics")
+	        .description(
+	                "Aggregate the measures of the new metrics up to the module when injecting them, "
+	                        + "in a single pass over the resources having received TUSAR measures, "
+	                        + "instead of leaving it to the SonarQube decorators.") //
+	        .type(PropertyType.BOOLEAN) //
+	        .defaultValue("false") //
+	        .onQualifiers(Qualifiers.PROJECT, Qualifiers.MODULE) //
+	        .build();
+
+	private static final String DUPLICATIONS_SECTION = "duplications";
+
+	/**
+	 * Don't keep a huge buffer around once a huge file has been processed.
+	 */
+	private static final int MAX_RETAINED_BUFFER_CAPACITY = 1 << 20;
+
 	private MetricFinder metricFinder;
 
-	private Set<Metric> silentlyIgnoredMetrics = new HashSet<Metric>();
+	/**
+	 * Lazily loaded since there could be no measure to inject at all.
+	 */
+	private MetricTable metricTable;
+
+	/**
+	 * Reused from one file to the next.
+	 */
+	private StringBuilder duplicationXMLBuffer = new StringBuilder();
+
+	private int duplicationsMaxDataSize;
+
+	/*
+	 * Duplications are consolidated at the module level, across reports.
+	 */
+
+	private List<ReportExtractor.Report> duplicationReports;
+
+	private Map<Resource, DuplicationData> duplicationDataPerFile;
+
+	private Map<String, Resource> resourcesByPath;
+
+	private Map<Resource, String> keysByResource;
+
+	/**
+	 * Null when not available or not enabled.
+	 */
+	private MetricRollups rollups;
 
 	public TusarMeasuresSensor(Settings settings, MetricFinder metricFinder) {
 		super(settings, metricFinder);
 		this.metricFinder = metricFinder;
 	}
 
+	public TusarMeasuresSensor(Settings settings, MetricFinder metricFinder, NewMetrics newMetrics) {
+		this(settings, metricFinder);
+		if (settings.getBoolean(TUSAR_ROLLUPS_PROPERTY.key())) {
+			rollups = new MetricRollups(newMetrics.getMetrics());
+			if (rollups.isEmpty()) {
+				rollups = null;
+			}
+		}
+	}
+
 	@Override
 	protected void internalAnalyse(Context context) {
-		silentlyIgnoredMetrics.clear();
+		metricTable = null;
+		duplicationsMaxDataSize = getSettings().getInt(TUSAR_DUPLICATIONS_MAX_DATA_SIZE_PROPERTY.key());
+		duplicationReports = new ArrayList<ReportExtractor.Report>();
+		duplicationDataPerFile = new LinkedHashMap<Resource, DuplicationData>();
+		resourcesByPath = new HashMap<String, Resource>();
+		keysByResource = new HashMap<Resource, String>();
 		for (ReportExtractor.Report report : context.getReports()) {
 			logger.debug("Injecting data from report '{}'", report.location);
 			context.report(report);
@@ -141,59 +218,25 @@ public class TusarMeasuresSensor extends AbstractSensor {
 				}
 			}
 		}
+		saveDuplications(context);
+		if (metricTable != null) {
+			context.flush();
+			metricTable.reportRejectedValues();
+		}
 	}
 
-	private void injectMeasure(Context context, String key, String value) {
-		Metric metric = metricFinder.findByKey(key);
-		if (metric != null) {
-			try {
-				context.injectMeasure(createMeasure(metric, value));
-			} catch (IllegalArgumentException e) {
-				logger.error("When creating measure for metric '{}' from value '{}': {}", metric.getKey(), value,
-				        e.getMessage());
-			}
-		} else {
-			if (silentlyIgnoredMetrics.add(metric)) {
-				logger.warn("Skipped measure using unknown metric '{}'", key);
-			}
+	@Override
+	protected void afterInjection(Context context) {
+		if (rollups != null) {
+			rollups.execute(context.context(), context.project(), context.injectedResources());
 		}
 	}
 
-	// TODO Use org.sonar.api.utils.ParsingUtils? Language dependency?
-	private Measure createMeasure(Metric metric, String value) {
-		Measure measure;
-
-		switch (metric.getType()) {
-
-		case BOOL:
-			measure = new Measure(metric, value);
-			break;
-
-		case STRING:
-		case DATA:
-		case DISTRIB:
-		case WORK_DUR:
-			measure = new Measure(metric, value).setPersistenceMode(PersistenceMode.DATABASE);
-			break;
-
-		case LEVEL:
-			measure = new Measure(metric, Level.valueOf(value));
-			break;
-
-		case FLOAT:
-		case INT:
-		case MILLISEC:
-		case PERCENT:
-		case RATING:
-			measure = new Measure(metric, Double.valueOf(value));
-			break;
-
-		default:
-			throw new IllegalArgumentException(String.format("Unknown type '%s' for metric '%s' (%s)",
-			        metric.getType(), metric.getKey(), metric.getDescription()));
+	private MetricTable getMetricTable() {
+		if (metricTable == null) {
+			metricTable = MetricTable.getInstance(metricFinder, TUSAR_METRIC_TRANSLATIONS);
 		}
-
-		return measure;
+		return metricTable;
 	}
 
 	/**
@@ -204,103 +247,115 @@ public class TusarMeasuresSensor extends AbstractSensor {
 	 * manual, new, etc.), you can add measures for it.
 	 */
 	private void processSize(Context context, SizeComplexType size) throws ParseException {
-		for (SizeComplexType.Resource element : size.getResource()) {
+		final MetricTable metricTable = getMetricTable();
+		for (final SizeComplexType.Resource element : size.getResource()) {
 			assert ReferenceExtractor.FILE_RESSOURCE_TYPE.equalsIgnoreCase(element.getType());
 			Resource resource = context.resolveResource(element.getType(), element.getValue());
 			if (resource != null) {
-				context.resource(resource);
-				for (SizeComplexType.Resource.Measure measure : element.getMeasure()) {
-					injectMeasure(context.resource(resource), translate(measure), measure.getValue());
-				}
+				context.resource(resource).injectMeasures(new MeasuresComputation() {
+
+					@Override
+					public Collection<Measure> compute() {
+						List<Measure> measures = new ArrayList<Measure>(element.getMeasure().size());
+						for (SizeComplexType.Resource.Measure measure : element.getMeasure()) {
+							MetricCodec codec = metricTable.findSize(measure.getKey());
+							if (codec != null) {
+								addIfNotNull(measures, codec.createMeasure(measure.getValue()));
+							}
+						}
+						return measures;
+					}
+				});
 			}
 		}
 	}
 
-	private String translate(SizeComplexType.Resource.Measure measure) {
-		Metric metric = TUSAR_METRIC_TRANSLATIONS.get(measure.getKey());
-		if (metric != null) {
-			if (metric == LI_METRIC) {
-				if (silentlyIgnoredMetrics.add(metric)) {
-					logger.warn("TUSAR report contains measures for the unsupported {} metric.", measure.getKey());
-				}
-			}
-			return metric.getKey();
-		} else {
-			//prod00141550: measure key insensitive
-			return measure.getKey().toLowerCase();
+	private static void addIfNotNull(List<Measure> measures, Measure measure) {
+		if (measure != null) {
+			measures.add(measure);
 		}
 	}
 
 	private void processMemory(Context context, MemoryComplexType memory) throws ParseException {
-		for (MemoryComplexType.Resource element : memory.getResource()) {
+		final MetricTable metricTable = getMetricTable();
+		for (final MemoryComplexType.Resource element : memory.getResource()) {
 			assert ReferenceExtractor.FILE_RESSOURCE_TYPE.equalsIgnoreCase(element.getType());
 			Resource resource = context.resolveResource(element.getType(), element.getValue());
 			if (resource != null) {
-				context.resource(resource);
-				for (MemoryComplexType.Resource.Measure measure : element.getMeasure()) {
-					// TODO Constraint keys?
-					injectMeasure(context.resource(resource), measure.getKey(), measure.getValue());
-				}
+				context.resource(resource).injectMeasures(new MeasuresComputation() {
+
+					@Override
+					public Collection<Measure> compute() {
+						List<Measure> measures = new ArrayList<Measure>(element.getMeasure().size());
+						for (MemoryComplexType.Resource.Measure measure : element.getMeasure()) {
+							// TODO Constraint keys?
+							MetricCodec codec = metricTable.find(measure.getKey());
+							if (codec != null) {
+								addIfNotNull(measures, codec.createMeasure(measure.getValue()));
+							}
+						}
+						return measures;
+					}
+				});
 			}
 		}
 	}
 
 	private void processDuplications(Context context, DuplicationsComplexType duplications) throws ParseException {
-
-		Map<Resource, DuplicationData> duplicationDataPerFile = new HashMap<Resource, DuplicationData>();
+		int reportIndex = duplicationReports.size();
+		duplicationReports.add(context.report());
 
 		for (DuplicationsComplexType.Set duplicationSet : duplications.getSet()) {
 			List<DuplicationsComplexType.Set.Resource> duplicationResources = duplicationSet.getResource();
+			int count = duplicationResources.size();
+			Resource[] resources = new Resource[count];
+			String[] keys = new String[count];
+			String[] startLines = new String[count];
 
 			boolean isSingleFile = true;
-			out: for (DuplicationsComplexType.Set.Resource dr1 : duplicationResources) {
-				for (DuplicationsComplexType.Set.Resource dr2 : duplicationResources) {
-					if (!(dr1.getPath().equalsIgnoreCase(dr2.getPath()))) {
-						isSingleFile = false;
-						break out;
+			String firstPath = count > 0 ? duplicationResources.get(0).getPath() : null;
+			for (int i = 0; i < count; ++i) {
+				DuplicationsComplexType.Set.Resource dr = duplicationResources.get(i);
+				isSingleFile &= firstPath.equalsIgnoreCase(dr.getPath());
+				resources[i] = resolveResource(context, resourcesByPath, dr.getPath());
+				if (resources[i] != null) {
+					keys[i] = keysByResource.get(resources[i]);
+					if (keys[i] == null) {
+						keys[i] = context.context().getResource(resources[i]).getEffectiveKey();
+						keysByResource.put(resources[i], keys[i]);
 					}
 				}
+				startLines[i] = dr.getLine();
 			}
 
-			for (DuplicationsComplexType.Set.Resource dr1 : duplicationResources) {
-				Resource r1 = context.resolveResource(dr1.getPath());
-				if (r1 != null) {
-					DuplicationData duplicationData = getDuplicationData(context, duplicationDataPerFile, r1,
-					        dr1.getPath());
-					HashSet<DuplicationData.Part> parts = new HashSet<DuplicationData.Part>();
-					for (DuplicationsComplexType.Set.Resource dr2 : duplicationResources) {
-						if (dr1 != dr2) {
-							Resource r2 = context.resolveResource(dr2.getPath());
-							if (r2 != null) {
-								parts.add(new DuplicationData.Part( //
-								        context.context().getResource(r2).getEffectiveKey(), dr2.getLine()));
-							}
-						}
-					}
-					duplicationData.cumulate(parts, //
-					        Integer.parseInt(dr1.getLine()), //
-					        Integer.parseInt(duplicationSet.getLines()));
-				}
-
-				if (isSingleFile) {
-					break;
-				}
-			}
+			DuplicationData.cumulate(duplicationDataPerFile, resources, keys, startLines,
+			        Integer.parseInt(duplicationSet.getLines()), isSingleFile, reportIndex);
 		}
+	}
 
-		for (Map.Entry<Resource, DuplicationData> entry : duplicationDataPerFile.entrySet()) {
-			saveData(context, entry.getValue(), entry.getKey());
+	/**
+	 * Inject the duplications of every file once all the reports have been
+	 * read, attributing them to the first report contributing to the file.
+	 */
+	private void saveDuplications(Context context) {
+		for (DuplicationData data : duplicationDataPerFile.values()) {
+			data.consolidate();
+			context.report(duplicationReports.get(data.getFirstReport()));
+			saveData(context, data, data.getResource());
 		}
+		duplicationReports = null;
+		duplicationDataPerFile = null;
+		resourcesByPath = null;
+		keysByResource = null;
 	}
 
-	private DuplicationData getDuplicationData(Context context, Map<Resource, DuplicationData> fileContainer,
-	        Resource file, String resourcePath) {
-		DuplicationData data = fileContainer.get(file);
-		if (data == null) {
-			data = new DuplicationData(context.context(), file, resourcePath);
-			fileContainer.put(file, data);
+	private static Resource resolveResource(Context context, Map<String, Resource> resourcesByPath, String path) {
+		if (resourcesByPath.containsKey(path)) {
+			return resourcesByPath.get(path);
 		}
-		return data;
+		Resource resource = context.resolveResource(path);
+		resourcesByPath.put(path, resource);
+		return resource;
 	}
 
 	private void saveData(Context context, DuplicationData data, Resource targetResource) {
@@ -308,6 +363,31 @@ public class TusarMeasuresSensor extends AbstractSensor {
 		context.injectMeasure(CoreMetrics.DUPLICATED_FILES, 1d);
 		context.injectMeasure(CoreMetrics.DUPLICATED_LINES, data.getOverallDuplicatedLineCount());
 		context.injectMeasure(CoreMetrics.DUPLICATED_BLOCKS, data.getDuplicatedBlockCount());
-		context.injectMeasure(CoreMetrics.DUPLICATIONS_DATA, data.getDuplicationXMLData());
+		context.injectMeasure(CoreMetrics.DUPLICATIONS_DATA, getDuplicationXMLData(context, data));
+	}
+
+	private String getDuplicationXMLData(Context context, DuplicationData data) {
+		DigestStore digests = context.getDigestStore();
+		if (digests.isEnabled()) {
+			String reportPath = context.report().location.getPath();
+			String digest = data.getDigest(digests.newDigest(), duplicationsMaxDataSize);
+			String[] fields = digests.reuse(DUPLICATIONS_SECTION, reportPath, data.getKey(), digest);
+			if (fields != null) {
+				return fields[0];
+			}
+			String xmlData = writeDuplicationXMLData(data);
+			digests.store(DUPLICATIONS_SECTION, reportPath, data.getKey(), digest, xmlData);
+			return xmlData;
+		} else {
+			return writeDuplicationXMLData(data);
+		}
+	}
+
+	private String writeDuplicationXMLData(DuplicationData data) {
+		String xmlData = data.getDuplicationXMLData(duplicationXMLBuffer, duplicationsMaxDataSize);
+		if (duplicationXMLBuffer.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+			duplicationXMLBuffer = new StringBuilder();
+		}
+		return xmlData;
 	}
 }
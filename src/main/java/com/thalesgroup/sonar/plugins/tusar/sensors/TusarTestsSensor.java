@@ -1,8 +1,10 @@
 package com.thalesgroup.sonar.plugins.tusar.sensors;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -10,19 +12,26 @@ import java.util.Map;
 
 import javax.xml.stream.XMLStreamException;
 
-import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.PropertyType;
+import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.measures.PersistenceMode;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.utils.ParsingUtils;
 
 import com.thalesgroup.sonar.plugins.tusar.metrics.AcceptanceMetrics;
+import com.thalesgroup.sonar.plugins.tusar.metrics.TestDurationMetrics;
+import com.thalesgroup.sonar.plugins.tusar.reports.DigestStore;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReferenceExtractor;
 import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportPreprocessor;
+import com.thalesgroup.sonar.plugins.tusar.reports.TestSuiteReferenceExtractor;
 import com.thalesgroup.tusar.tests.v5.TestsComplexType;
 import com.thalesgroup.tusar.v12.Tusar;
 
@@ -30,7 +39,7 @@ public class TusarTestsSensor extends AbstractSensor {
 
 	private static final Logger logger = LoggerFactory.getLogger(TusarTestsSensor.class);
 
-	public static ReferenceExtractor refExtractor = new ReferenceExtractor() {
+	public static ReferenceExtractor refExtractor = new TestSuiteReferenceExtractor() {
 
 		@Override
 		public Collection<? extends String> getReferencedResourcePaths(Tusar model) {
@@ -45,8 +54,122 @@ public class TusarTestsSensor extends AbstractSensor {
 		}
 	};
 
+	private static final int DEFAULT_MAX_STACK_TRACE_LENGTH = 10000;
+
+	private static final int DEFAULT_MAX_STACK_TRACES = 100;
+
+	private static final int DEFAULT_SLOWEST_TESTS = 10;
+
+	public static final PropertyDefinition TUSAR_TESTS_MAX_STACK_TRACE_LENGTH_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.testsMaxStackTraceLength")
+	        .subCategory("Reports")
+	        .name("Maximum stack trace length")
+	        .description(
+	                "Maximum number of characters kept from the stack trace of a failed test, "
+	                        + "a negative value meaning no limit.") //
+	        .type(PropertyType.INTEGER) //
+	        .defaultValue(Integer.toString(DEFAULT_MAX_STACK_TRACE_LENGTH)) //
+	        .hidden() // Read by the report preprocessing, from the batch settings
+	        .build();
+
+	public static final PropertyDefinition TUSAR_TESTS_MAX_STACK_TRACES_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.testsMaxStackTraces")
+	        .subCategory("Reports")
+	        .name("Maximum stack traces per test suite")
+	        .description(
+	                "Maximum number of failed tests of a test suite whose stack trace is kept, "
+	                        + "a negative value meaning no limit.") //
+	        .type(PropertyType.INTEGER) //
+	        .defaultValue(Integer.toString(DEFAULT_MAX_STACK_TRACES)) //
+	        .hidden() // Read by the report preprocessing, from the batch settings
+	        .build();
+
+	public static final PropertyDefinition TUSAR_SLOWEST_TESTS_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.slowestTests")
+	        .subCategory("Reports")
+	        .name("Slowest tests")
+	        .description(
+	                "Number of slowest test cases listed for each test suite and for the project, "
+	                        + "0 to disable the listing.") //
+	        .type(PropertyType.INTEGER) //
+	        .defaultValue(Integer.toString(DEFAULT_SLOWEST_TESTS)) //
+	        .hidden() // Read by the report preprocessing, from the batch settings
+	        .build();
+
+	private static final String TESTS_SECTION = "tests";
+
+	/*
+	 * Analysis results made available to the parent project.
+	 */
+
+	private static final String DURATIONS_RESULT = "tests.durations";
+
+	private static final String SLOWEST_TESTS_RESULT = "tests.slowest";
+
+	static final ReportPreprocessor<Collection<TestSuiteReport>> testSuitesPreprocessor = new ReportPreprocessor<Collection<TestSuiteReport>>() {
+
+		@Override
+		public Collection<TestSuiteReport> preprocess(Report report, Settings batchSettings, DigestStore digests)
+		        throws ParseException {
+			List<TestSuiteReport> testSuiteReports = new ArrayList<TestSuiteReport>();
+			TestsComplexType tests = report.model.getTests();
+			if (tests != null && !isAcceptanceTests(tests)) {
+				String reportPath = report.location.getPath();
+				DigestStore.Digest digest = digests.isEnabled() ? digests.newDigest() : null;
+				int maxStackTraceLength = getInt(batchSettings, TUSAR_TESTS_MAX_STACK_TRACE_LENGTH_PROPERTY,
+				        DEFAULT_MAX_STACK_TRACE_LENGTH);
+				int maxStackTraces = getInt(batchSettings, TUSAR_TESTS_MAX_STACK_TRACES_PROPERTY,
+				        DEFAULT_MAX_STACK_TRACES);
+				TestDataWriter writer = new TestDataWriter(maxStackTraceLength, maxStackTraces);
+				int slowestTestCount = getInt(batchSettings, TUSAR_SLOWEST_TESTS_PROPERTY, DEFAULT_SLOWEST_TESTS);
+				for (Map.Entry<String, List<TestsComplexType.Testsuite>> entry : groupTestSuites(tests).entrySet()) {
+					testSuiteReports.add(getTestsData(entry.getKey(), entry.getValue(), reportPath, digests, digest,
+					        writer, slowestTestCount));
+				}
+			}
+			return testSuiteReports;
+		}
+	};
+
+	/**
+	 * The test suites are aggregated (and their details generated) in
+	 * background as soon as the reports are loaded.
+	 */
+	public static ReportPreprocessor<?> preprocessor = testSuitesPreprocessor;
+
+	/**
+	 * The duration measures of a project merging the ones of its modules
+	 * while having no test report of its own.
+	 */
+	private List<Measure> projectMeasures;
+
+	/**
+	 * The reports of a test suite found in several TUSAR reports (such as
+	 * sharded test runs), attributed to the first of them.
+	 */
+	private static class MergedTestSuite {
+
+		private final Report report;
+
+		private final TestSuiteReport testSuiteReport;
+
+		private final List<String> testData = new ArrayList<String>(1);
+
+		private MergedTestSuite(Report report, String path, int slowestTestCount) {
+			this.report = report;
+			this.testSuiteReport = new TestSuiteReport(path);
+			this.testSuiteReport.setSlowestTests(new SlowestTests(slowestTestCount));
+		}
+	}
+
 	@Override
 	protected void internalAnalyse(Context context) {
+		int slowestTestCount = getInt(context.getBatchSettings(), TUSAR_SLOWEST_TESTS_PROPERTY, DEFAULT_SLOWEST_TESTS);
+		DurationSketch projectDurations = new DurationSketch();
+		SlowestTests projectSlowestTests = new SlowestTests(slowestTestCount);
+		Report firstReport = null;
+		Map<String, Resource> resourcesByPath = new HashMap<String, Resource>();
+		Map<Resource, MergedTestSuite> mergedTestSuites = new LinkedHashMap<Resource, MergedTestSuite>();
 		for (ReportExtractor.Report report : context.getReports()) {
 			logger.debug("Injecting data from report '{}'", report.location);
 			context.report(report);
@@ -55,22 +178,89 @@ public class TusarTestsSensor extends AbstractSensor {
 				String toolname = tests.getToolname();
 				try {
 					// TODO Koundousserie to be refactored one day.
-					if ("fitnesse".equalsIgnoreCase(toolname)) {
+					if (isAcceptanceTests(tests)) {
 						processAcceptanceTestsData(context, extractFitnesseTestsData(tests));
 					} else {
-						processTestsData(context, extractTestsData(tests));
+						Collection<TestSuiteReport> testSuiteReports = context.getPreprocessed(testSuitesPreprocessor);
+						if (testSuiteReports != null) {
+							mergeTestsData(context, testSuiteReports, resourcesByPath, mergedTestSuites,
+							        slowestTestCount);
+							for (TestSuiteReport testSuiteReport : testSuiteReports) {
+								projectDurations.merge(testSuiteReport.getDurations());
+								projectSlowestTests.addAll(testSuiteReport.getSlowestTests(),
+								        testSuiteReport.getPath() + '#');
+							}
+							if (firstReport == null && !testSuiteReports.isEmpty()) {
+								firstReport = report;
+							}
+						}
 					}
 				} catch (XMLStreamException e) {
 					logger.error("Failed to extract test data for tool " + toolname, e);
 				}
 			}
 		}
+
+		processTestsData(context, mergedTestSuites);
+
+		/*
+		 * Percentiles can't be aggregated from the children measures, so the
+		 * sketches of the modules, analysed beforehand, are merged instead.
+		 */
+		for (DurationSketch moduleDurations : context.getSubProjectAnalysisResults(DURATIONS_RESULT,
+		        DurationSketch.class)) {
+			projectDurations.merge(moduleDurations);
+		}
+		for (SlowestTests moduleSlowestTests : context.getSubProjectAnalysisResults(SLOWEST_TESTS_RESULT,
+		        SlowestTests.class)) {
+			projectSlowestTests.addAll(moduleSlowestTests, "");
+		}
+		projectMeasures = null;
+		if (!projectDurations.isEmpty()) {
+			context.publishAnalysisResult(DURATIONS_RESULT, projectDurations);
+			context.publishAnalysisResult(SLOWEST_TESTS_RESULT, projectSlowestTests);
+
+			List<Measure> measures = computeDurationMeasures(projectDurations);
+			if (!projectSlowestTests.isEmpty()) {
+				measures.add(computeSlowestTestsMeasure(projectSlowestTests));
+			}
+			if (firstReport != null) {
+				context.report(firstReport).resource(context.project());
+				for (Measure measure : measures) {
+					context.injectMeasure(measure);
+				}
+			} else {
+				// Without any report of its own, directly saved.
+				projectMeasures = measures;
+			}
+		}
+	}
+
+	@Override
+	protected void afterInjection(Context context) {
+		if (projectMeasures != null) {
+			for (Measure measure : projectMeasures) {
+				saveMeasure(context.context(), context.project(), measure);
+			}
+			projectMeasures = null;
+		}
 	}
 
 	public TusarTestsSensor(Settings settings, MetricFinder metricFinder) {
 		super(settings, metricFinder);
 	}
 
+	/**
+	 * Batch settings don't necessarily know about the default values.
+	 */
+	private static int getInt(Settings batchSettings, PropertyDefinition property, int defaultValue) {
+		return batchSettings.hasKey(property.key()) ? batchSettings.getInt(property.key()) : defaultValue;
+	}
+
+	private static boolean isAcceptanceTests(TestsComplexType tests) {
+		return "fitnesse".equalsIgnoreCase(tests.getToolname());
+	}
+
 	private Collection<TestSuiteReport> extractFitnesseTestsData(TestsComplexType tests) throws XMLStreamException {
 		Map<String, TestSuiteReport> reportsPerPath = new HashMap<String, TestSuiteReport>();
 
@@ -90,91 +280,214 @@ public class TusarTestsSensor extends AbstractSensor {
 		return reportsPerPath.values();
 	}
 
-	private Collection<TestSuiteReport> extractTestsData(TestsComplexType tests) throws XMLStreamException {
-		Map<String, TestSuiteReport> reportsPerPath = new HashMap<String, TestSuiteReport>();
-
+	/**
+	 * Test cases of a same test suite could be spread over several test suite
+	 * elements.
+	 */
+	private static Map<String, List<TestsComplexType.Testsuite>> groupTestSuites(TestsComplexType tests) {
+		Map<String, List<TestsComplexType.Testsuite>> testSuitesPerPath = new HashMap<String, List<TestsComplexType.Testsuite>>();
 		for (TestsComplexType.Testsuite testSuite : tests.getTestsuite()) {
-			for (TestsComplexType.Testsuite.Testcase testCase : testSuite.getTestcase()) {
-
-				String testSuitePath = testSuite.getName();
+			String testSuitePath = testSuite.getName();
+			List<TestsComplexType.Testsuite> testSuites = testSuitesPerPath.get(testSuitePath);
+			if (testSuites == null) {
+				testSuites = new ArrayList<TestsComplexType.Testsuite>(1);
+				testSuitesPerPath.put(testSuitePath, testSuites);
+			}
+			testSuites.add(testSuite);
+		}
+		return testSuitesPerPath;
+	}
 
-				TestSuiteReport testSuiteReport = reportsPerPath.get(testSuitePath);
-				if (testSuiteReport == null) {
-					testSuiteReport = new TestSuiteReport(testSuitePath);
-					reportsPerPath.put(testSuitePath, testSuiteReport);
+	/**
+	 * @param digest
+	 *            Null if the digests are disabled.
+	 */
+	private static TestSuiteReport getTestsData(String testSuitePath, List<TestsComplexType.Testsuite> testSuites,
+	        String reportPath, DigestStore digests, DigestStore.Digest digest, TestDataWriter writer,
+	        int slowestTestCount) throws ParseException {
+		String testSuiteDigest = null;
+		if (digest != null) {
+			// The test data also depends on the stack trace limits.
+			digest.add(writer.getLimits());
+			for (TestsComplexType.Testsuite testSuite : testSuites) {
+				for (TestsComplexType.Testsuite.Testcase testCase : testSuite.getTestcase()) {
+					digest.add(testCase.getTestname()).add(testCase.getTime());
+					if (testCase.getFailure() != null) {
+						digest.add(TestCaseDetails.STATUS_FAILURE).add(testCase.getFailure().getMessage())
+						        .add(testCase.getFailure().getContent());
+					} else if (testCase.getError() != null) {
+						digest.add(TestCaseDetails.STATUS_ERROR).add(testCase.getError().getMessage())
+						        .add(testCase.getError().getContent());
+					} else if (testCase.getSkipped() != null) {
+						digest.add(TestCaseDetails.STATUS_SKIPPED);
+					}
 				}
+			}
+			testSuiteDigest = digest.finish();
+			String[] fields = digests.reuse(TESTS_SECTION, reportPath, testSuitePath, testSuiteDigest);
+			if (fields != null) {
+				return new TestSuiteReport(testSuitePath, fields);
+			}
+		}
+		TestSuiteReport testSuiteReport = extractTestsData(testSuitePath, testSuites, writer, slowestTestCount);
+		digests.store(TESTS_SECTION, reportPath, testSuitePath, testSuiteDigest, testSuiteReport.toFields());
+		return testSuiteReport;
+	}
 
-				TestCaseDetails testCaseDetails = new TestCaseDetails();
+	/**
+	 * The test data is written while the test cases are walked, so that
+	 * nothing is kept about them but the suite counters, the duration sketch
+	 * and the slowest test cases.
+	 */
+	private static TestSuiteReport extractTestsData(String testSuitePath,
+	        List<TestsComplexType.Testsuite> testSuites, TestDataWriter writer, int slowestTestCount)
+	        throws ParseException {
+		TestSuiteReport testSuiteReport = new TestSuiteReport(testSuitePath);
+		SlowestTests slowestTests = new SlowestTests(slowestTestCount);
+		testSuiteReport.setSlowestTests(slowestTests);
+		writer.start();
+
+		for (TestsComplexType.Testsuite testSuite : testSuites) {
+			for (TestsComplexType.Testsuite.Testcase testCase : testSuite.getTestcase()) {
 
-				testCaseDetails.setName(testCase.getTestname());
-				if (testCase.getTime() == null) {
-					testCaseDetails.setTimeMS(0);
-				} else {
-					testCaseDetails.setTimeMS(getTimeAttributeInMS(testCase.getTime()).intValue());
+				String name = testCase.getTestname();
+				int timeMS = 0;
+				if (testCase.getTime() != null) {
+					timeMS = getTimeAttributeInMS(testCase.getTime()).intValue();
 				}
 
-				String testCaseStatus = TestCaseDetails.STATUS_OK;
-
 				if (testCase.getFailure() != null) {
-					testCaseStatus = TestCaseDetails.STATUS_FAILURE;
-					testCaseDetails.setErrorMessage(testCase.getFailure().getMessage());
-					testCaseDetails.setStackTrace(testCase.getFailure().getContent());
+					writer.writeFailedTestCase(TestCaseDetails.STATUS_FAILURE, timeMS, name, false, testCase
+					        .getFailure().getMessage(), testCase.getFailure().getContent());
 
 					// cumulate data for test suite
 					testSuiteReport.setFailures(testSuiteReport.getFailures() + 1);
 				} else if (testCase.getError() != null) {
-					testCaseStatus = TestCaseDetails.STATUS_ERROR;
-					testCaseDetails.setErrorMessage(testCase.getError().getMessage());
-					testCaseDetails.setStackTrace(testCase.getError().getContent());
+					writer.writeFailedTestCase(TestCaseDetails.STATUS_ERROR, timeMS, name, true, testCase.getError()
+					        .getMessage(), testCase.getError().getContent());
 
 					// cumulate data for test suite
 					testSuiteReport.setErrors(testSuiteReport.getErrors() + 1);
 				} else if (testCase.getSkipped() != null) {
-					testCaseStatus = TestCaseDetails.STATUS_SKIPPED;
+					writer.writeTestCase(TestCaseDetails.STATUS_SKIPPED, timeMS, name);
 
 					// cumulate data for test suite
 					testSuiteReport.setSkipped(testSuiteReport.getSkipped() + 1);
+				} else {
+					writer.writeTestCase(TestCaseDetails.STATUS_OK, timeMS, name);
 				}
 
-				testCaseDetails.setStatus(testCaseStatus);
-
 				testSuiteReport.setTests(testSuiteReport.getTests() + 1);
-				testSuiteReport.setTimeMS(testSuiteReport.getTimeMS() + testCaseDetails.getTimeMS());
-				testSuiteReport.getDetails().add(testCaseDetails);
+				testSuiteReport.setTimeMS(testSuiteReport.getTimeMS() + timeMS);
+				testSuiteReport.getDurations().add(timeMS);
+				slowestTests.add(name, timeMS);
 			}
 		}
 
-		return reportsPerPath.values();
+		testSuiteReport.setTestData(writer.finish());
+		return testSuiteReport;
 	}
 
-	private void processTestsData(Context context, Collection<TestSuiteReport> testSuiteReports) {
+	/**
+	 * Each test suite path is resolved once, and the reports of the test
+	 * suites resolved to the same resource are merged.
+	 */
+	private static void mergeTestsData(Context context, Collection<TestSuiteReport> testSuiteReports,
+	        Map<String, Resource> resourcesByPath, Map<Resource, MergedTestSuite> mergedTestSuites,
+	        int slowestTestCount) {
 		for (TestSuiteReport testSuiteReport : testSuiteReports) {
-			Resource resource = context.resolveResource(testSuiteReport.getPath());
+			String path = testSuiteReport.getPath();
+			Resource resource;
+			if (resourcesByPath.containsKey(path)) {
+				resource = resourcesByPath.get(path);
+			} else {
+				resource = context.resolveResource(path);
+				resourcesByPath.put(path, resource);
+			}
 			if (resource != null) {
-				context.resource(resource);
-
-				double tests = testSuiteReport.getTests();
-				double errors = testSuiteReport.getErrors();
-				double failures = testSuiteReport.getFailures();
-				double skipped = testSuiteReport.getSkipped();
-				double passed = tests - errors - failures;
+				MergedTestSuite mergedTestSuite = mergedTestSuites.get(resource);
+				if (mergedTestSuite == null) {
+					mergedTestSuite = new MergedTestSuite(context.report(), path, slowestTestCount);
+					mergedTestSuites.put(resource, mergedTestSuite);
+				}
+				mergedTestSuite.testSuiteReport.merge(testSuiteReport);
+				mergedTestSuite.testData.add(testSuiteReport.getTestData());
+			}
+		}
+	}
 
-				context.injectMeasure(CoreMetrics.TESTS, tests);
-				context.injectMeasure(CoreMetrics.TEST_ERRORS, errors);
-				context.injectMeasure(CoreMetrics.TEST_FAILURES, failures);
-				context.injectMeasure(CoreMetrics.SKIPPED_TESTS, skipped);
-				context.injectMeasure(CoreMetrics.TEST_EXECUTION_TIME, testSuiteReport.getTimeMS());
-				if (tests > 0) {
-					double percentage = ParsingUtils.scaleValue(passed * 100 / tests);
-					context.injectMeasure(CoreMetrics.TEST_SUCCESS_DENSITY, percentage);
+	private void processTestsData(Context context, Map<Resource, MergedTestSuite> mergedTestSuites) {
+		// The same limits as the ones of the preprocessed test suites.
+		Settings batchSettings = context.getBatchSettings();
+		int maxStackTraceLength = getInt(batchSettings, TUSAR_TESTS_MAX_STACK_TRACE_LENGTH_PROPERTY,
+		        DEFAULT_MAX_STACK_TRACE_LENGTH);
+		int maxStackTraces = getInt(batchSettings, TUSAR_TESTS_MAX_STACK_TRACES_PROPERTY, DEFAULT_MAX_STACK_TRACES);
+		TestDataWriter writer = new TestDataWriter(maxStackTraceLength, maxStackTraces);
+		for (Map.Entry<Resource, MergedTestSuite> entry : mergedTestSuites.entrySet()) {
+			MergedTestSuite mergedTestSuite = entry.getValue();
+			TestSuiteReport testSuiteReport = mergedTestSuite.testSuiteReport;
+			if (mergedTestSuite.testData.size() == 1) {
+				testSuiteReport.setTestData(mergedTestSuite.testData.get(0));
+			} else {
+				// The stack trace count limit applies to the merged suite.
+				writer.start();
+				for (String testData : mergedTestSuite.testData) {
+					writer.append(testData);
 				}
+				testSuiteReport.setTestData(writer.finish());
+			}
 
-				String testCaseDetails = generateTestsDetails(testSuiteReport);
-				context.injectMeasure(new Measure(CoreMetrics.TEST_DATA, testCaseDetails));
+			context.report(mergedTestSuite.report).resource(entry.getKey());
+			for (Measure measure : computeTestsMeasures(testSuiteReport)) {
+				context.injectMeasure(measure);
+			}
+			if (!testSuiteReport.getDurations().isEmpty()) {
+				for (Measure measure : computeDurationMeasures(testSuiteReport.getDurations())) {
+					context.injectMeasure(measure);
+				}
+			}
+			if (!testSuiteReport.getSlowestTests().isEmpty()) {
+				context.injectMeasure(computeSlowestTestsMeasure(testSuiteReport.getSlowestTests()));
 			}
 		}
 	}
 
+	private static List<Measure> computeDurationMeasures(DurationSketch durations) {
+		List<Measure> measures = new ArrayList<Measure>(5);
+		measures.add(new Measure(TestDurationMetrics.TEST_DURATION_P50, durations.getQuantile(0.5)));
+		measures.add(new Measure(TestDurationMetrics.TEST_DURATION_P90, durations.getQuantile(0.9)));
+		measures.add(new Measure(TestDurationMetrics.TEST_DURATION_P99, durations.getQuantile(0.99)));
+		measures.add(new Measure(TestDurationMetrics.TEST_DURATION_MAX, (double) durations.getMax()));
+		return measures;
+	}
+
+	private static Measure computeSlowestTestsMeasure(SlowestTests slowestTests) {
+		return new Measure(TestDurationMetrics.SLOWEST_TESTS, slowestTests.encode())
+		        .setPersistenceMode(PersistenceMode.DATABASE);
+	}
+
+	private Collection<Measure> computeTestsMeasures(TestSuiteReport testSuiteReport) {
+		double tests = testSuiteReport.getTests();
+		double errors = testSuiteReport.getErrors();
+		double failures = testSuiteReport.getFailures();
+		double skipped = testSuiteReport.getSkipped();
+		double passed = tests - errors - failures;
+
+		List<Measure> measures = new ArrayList<Measure>(7);
+		measures.add(new Measure(CoreMetrics.TESTS, tests));
+		measures.add(new Measure(CoreMetrics.TEST_ERRORS, errors));
+		measures.add(new Measure(CoreMetrics.TEST_FAILURES, failures));
+		measures.add(new Measure(CoreMetrics.SKIPPED_TESTS, skipped));
+		measures.add(new Measure(CoreMetrics.TEST_EXECUTION_TIME, (double) testSuiteReport.getTimeMS()));
+		if (tests > 0) {
+			double percentage = ParsingUtils.scaleValue(passed * 100 / tests);
+			measures.add(new Measure(CoreMetrics.TEST_SUCCESS_DENSITY, percentage));
+		}
+
+		measures.add(new Measure(CoreMetrics.TEST_DATA, testSuiteReport.getTestData()));
+		return measures;
+	}
+
 	private void processAcceptanceTestsData(Context context, Collection<TestSuiteReport> testSuiteReports) {
 		for (TestSuiteReport testSuiteReport : testSuiteReports) {
 			if (testSuiteReport.isTestSuite()) {
@@ -199,39 +512,11 @@ public class TusarTestsSensor extends AbstractSensor {
 		}
 	}
 
-	private String generateTestsDetails(TestSuiteReport fileReport) {
-		StringBuilder testCaseDetails = new StringBuilder();
-		testCaseDetails.append("<tests-details>");
-		List<TestCaseDetails> details = fileReport.getDetails();
-
-		for (TestCaseDetails detail : details) {
-			testCaseDetails.append("<testcase status=\"").append(detail.getStatus()).append("\" time=\"")
-			        .append(detail.getTimeMS()).append("\" name=\"").append(detail.getName()).append("\"");
-
-			boolean isError = detail.getStatus().equals(TestCaseDetails.STATUS_ERROR);
-			boolean isFailure = detail.getStatus().equals(TestCaseDetails.STATUS_FAILURE);
-			if (isError || isFailure) {
-				testCaseDetails.append(">").append(isError ? "<error message=\"" : "<failure message=\"")
-				        .append(StringEscapeUtils.escapeXml(detail.getErrorMessage())).append("\">")
-				        .append("<![CDATA[").append(StringEscapeUtils.escapeXml(detail.getStackTrace())).append("]]>")
-				        .append(isError ? "</error>" : "</failure>").append("</testcase>");
-			} else {
-				testCaseDetails.append("/>");
-			}
-		}
-		testCaseDetails.append("</tests-details>");
-		return testCaseDetails.toString();
-	}
-
 	/*
 	 * hardcoded to Locale.ENGLISH see http://jira.codehaus.org/browse/SONAR-602
 	 */
-	private Double getTimeAttributeInMS(String stringTime) throws XMLStreamException {
-		try {
-			Double time = ParsingUtils.parseNumber(stringTime, Locale.ENGLISH);
-			return !Double.isNaN(time) ? ParsingUtils.scaleValue(time * 1000, 3) : 0;
-		} catch (ParseException e) {
-			throw new XMLStreamException(e);
-		}
+	private static Double getTimeAttributeInMS(String stringTime) throws ParseException {
+		Double time = ParsingUtils.parseNumber(stringTime, Locale.ENGLISH);
+		return !Double.isNaN(time) ? ParsingUtils.scaleValue(time * 1000, 3) : 0;
 	}
 }
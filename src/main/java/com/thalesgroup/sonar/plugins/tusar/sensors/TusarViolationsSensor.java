@@ -1,24 +1,31 @@
 package com.thalesgroup.sonar.plugins.tusar.sensors;
 
-import java.lang.reflect.Field;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.PropertyType;
 import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.component.ResourcePerspectives;
+import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issuable;
 import org.sonar.api.issue.Issue;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
@@ -31,7 +38,6 @@ import com.thalesgroup.tusar.violations.v4.ViolationsComplexType;
 
 public class TusarViolationsSensor extends AbstractSensor {
 
-	private static final String RESOLUTION_FIELD = "resolution";
 	private static final Logger logger = LoggerFactory.getLogger(TusarViolationsSensor.class);
 
 	public static ReferenceExtractor refExtractor = new ReferenceExtractor() {
@@ -49,12 +55,51 @@ public class TusarViolationsSensor extends AbstractSensor {
 		}
 	};
 
+	public static final PropertyDefinition TUSAR_VIOLATIONS_DEDUPLICATION_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.violationsDeduplication")
+	        .subCategory("Reports")
+	        .name("Violations de-duplication")
+	        .description(
+	                "Discard the violations having the same file, rule and line as a previous one, "
+	                        + "such as the ones reported once per template instantiation. "
+	                        + "The discarded violations are counted by the duplicated_violations measure.") //
+	        .type(PropertyType.BOOLEAN) //
+	        .defaultValue("false") //
+	        .onQualifiers(Qualifiers.PROJECT, Qualifiers.MODULE) //
+	        .build();
+
+	public static final PropertyDefinition TUSAR_VIOLATIONS_MAX_PER_FILE_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.violationsMaxPerFile")
+	        .subCategory("Reports")
+	        .name("Maximum violations per file")
+	        .description(
+	                "Maximum number of violations kept for a file, 0 for no limit. "
+	                        + "The discarded violations are counted by the capped_violations measure.") //
+	        .type(PropertyType.INTEGER) //
+	        .defaultValue("0") //
+	        .onQualifiers(Qualifiers.PROJECT, Qualifiers.MODULE) //
+	        .build();
+
+	public static final PropertyDefinition TUSAR_VIOLATIONS_MAX_PER_RULE_PROPERTY = PropertyDefinition
+	        .builder("sonar.tusar.violationsMaxPerRule")
+	        .subCategory("Reports")
+	        .name("Maximum violations per rule")
+	        .description(
+	                "Maximum number of violations of a rule kept for a module, 0 for no limit. "
+	                        + "The discarded violations are counted by the capped_violations measure.") //
+	        .type(PropertyType.INTEGER) //
+	        .defaultValue("0") //
+	        .onQualifiers(Qualifiers.PROJECT, Qualifiers.MODULE) //
+	        .build();
+
 	private RuleFinder ruleFinder;
 
 	private ActiveRules activeRules;
 
 	private ResourcePerspectives perspectives;
 
+	private final ResolutionField resolutionField = new ResolutionField();
+
 	public TusarViolationsSensor(Settings settings, RuleFinder ruleFinder, ActiveRules activeRules,
 	        ResourcePerspectives perspectives) {
 		super(settings, null);
@@ -63,8 +108,54 @@ public class TusarViolationsSensor extends AbstractSensor {
 		this.perspectives = perspectives;
 	}
 
+	/**
+	 * The violations of a file, with their rule and line resolved, kept in
+	 * arrays reused from one file to the next.
+	 */
+	private static class ViolationRecords {
+
+		private static final int INITIAL_CAPACITY = 64;
+
+		private Rule[] rules = new Rule[INITIAL_CAPACITY];
+
+		/**
+		 * 0 for the whole file.
+		 */
+		private int[] lines = new int[INITIAL_CAPACITY];
+
+		private boolean[] falsePositives = new boolean[INITIAL_CAPACITY];
+
+		private int size;
+
+		private void clear() {
+			// Don't retain the rules.
+			Arrays.fill(rules, 0, size, null);
+			size = 0;
+		}
+
+		private void add(Rule rule, Integer line, boolean falsePositive) {
+			if (size == rules.length) {
+				rules = Arrays.copyOf(rules, 2 * size);
+				lines = Arrays.copyOf(lines, 2 * size);
+				falsePositives = Arrays.copyOf(falsePositives, 2 * size);
+			}
+			rules[size] = rule;
+			lines[size] = line != null ? line : 0;
+			falsePositives[size] = falsePositive;
+			++size;
+		}
+	}
+
 	@Override
 	protected void internalAnalyse(Context context) {
+		ViolationFilter filter = new ViolationFilter(
+		        getSettings().getBoolean(TUSAR_VIOLATIONS_DEDUPLICATION_PROPERTY.key()),
+		        getSettings().getInt(TUSAR_VIOLATIONS_MAX_PER_FILE_PROPERTY.key()),
+		        getSettings().getInt(TUSAR_VIOLATIONS_MAX_PER_RULE_PROPERTY.key()));
+		ViolationRecords records = new ViolationRecords();
+		Map<Resource, Issuable> issuables = new HashMap<Resource, Issuable>();
+		List<Issue> issues = new ArrayList<Issue>();
+		List<Issue> falsePositives = new ArrayList<Issue>();
 		for (ReportExtractor.Report report : context.getReports()) {
 			logger.debug("Injecting data from report '{}'", report.location);
 			context.report(report);
@@ -74,26 +165,29 @@ public class TusarViolationsSensor extends AbstractSensor {
 					for (ViolationsComplexType.File file : violations.getFile()) {
 						Resource resource = context.resolveResource(file.getPath());
 						if (resource != null) {
-							context.resource(resource);
+							records.clear();
 							for (ViolationsComplexType.File.Violation violation : file.getViolation()) {
 								Rule rule = findActiveTusarRule(violation.getKey());
 								if (rule != null) {
-									/*
-									 * TODO Add a dedicated preprocessing stage
-									 * for issues?
-									 */
-									Issuable issuable = perspectives.as(Issuable.class, resource);
-									if (issuable != null) {
-										Issue issue = issuable.newIssueBuilder().ruleKey(rule.ruleKey()) //
-										        .line(parseLineIndex(violation.getLine())) //
-										        .build();
-										if (violation.getSeverity().equals("false positive")) {
-											setIssueToFalsePositive(issue);
-										}
-										issuable.addIssue(issue);
+									Integer line = parseLineIndex(violation.getLine());
+									if (filter.accept(report, resource, rule, line)) {
+										records.add(rule, line, violation.getSeverity().equals("false positive"));
 									}
 								}
 							}
+							if (records.size > 0) {
+								// A file can be found in several reports.
+								Issuable issuable;
+								if (issuables.containsKey(resource)) {
+									issuable = issuables.get(resource);
+								} else {
+									issuable = perspectives.as(Issuable.class, resource);
+									issuables.put(resource, issuable);
+								}
+								if (issuable != null) {
+									addIssues(issuable, records, issues, falsePositives);
+								}
+							}
 						}
 					}
 				}
@@ -101,26 +195,47 @@ public class TusarViolationsSensor extends AbstractSensor {
 				logger.error("Failed to extract violation data", e);
 			}
 		}
+
+		injectFilteredViolations(context, filter);
+	}
+
+	/**
+	 * The measures are injected once the counts are known for every report.
+	 */
+	private static void injectFilteredViolations(Context context, ViolationFilter filter) {
+		for (Resource resource : filter.getFilteredResources()) {
+			context.report(filter.getFirstReport(resource)).resource(resource);
+			for (Measure measure : filter.computeMeasures(resource)) {
+				context.injectMeasure(measure);
+			}
+		}
+		if (filter.getDuplicatedCount() > 0 || filter.getCappedCount() > 0) {
+			logger.info("Discarded {} duplicated and {} capped violations", filter.getDuplicatedCount(),
+			        filter.getCappedCount());
+		}
 	}
-	
-	private Issue setIssueToFalsePositive(Issue issue) {
-		Class<? extends Issue> defaultIssueClass = issue.getClass();
-		try {
-			Field declaredField = defaultIssueClass.getDeclaredField(RESOLUTION_FIELD);
-			declaredField.setAccessible(true);
-			declaredField.set(issue, Issue.RESOLUTION_FALSE_POSITIVE);
-			declaredField.setAccessible(false);
-			
-		} catch (NoSuchFieldException e) {
-			logger.error("Issue don't have resolution field", e);
-		} catch (SecurityException e) {
-			logger.error("Security problem when managing resolution field of an issue", e);
-		} catch (IllegalArgumentException e) {
-			logger.error("Illegal argument when setting the resolution field for issue", e);
-		} catch (IllegalAccessException e) {
-			logger.error("Can't access resolution field for the issue", e);
+
+	/**
+	 * The issues of a file are built from its violation records, then added
+	 * once their resolution is set.
+	 */
+	private void addIssues(Issuable issuable, ViolationRecords records, List<Issue> issues,
+	        List<Issue> falsePositives) {
+		issues.clear();
+		falsePositives.clear();
+		for (int i = 0; i < records.size; ++i) {
+			Issue issue = issuable.newIssueBuilder().ruleKey(records.rules[i].ruleKey()) //
+			        .line(records.lines[i] > 0 ? records.lines[i] : null) //
+			        .build();
+			if (records.falsePositives[i]) {
+				falsePositives.add(issue);
+			}
+			issues.add(issue);
+		}
+		resolutionField.setAll(falsePositives, Issue.RESOLUTION_FALSE_POSITIVE);
+		for (Issue issue : issues) {
+			issuable.addIssue(issue);
 		}
-		return issue;
 	}
 
 	private Integer parseLineIndex(String line) throws ParseException {
@@ -147,43 +262,61 @@ public class TusarViolationsSensor extends AbstractSensor {
 		}
 	}
 
-	private Map<String, Rule> ruleCache = new WeakHashMap<String, Rule>();
+	/**
+	 * Active TUSAR rules by rule key, built on the first lookup.
+	 */
+	private Map<String, Rule> ruleIndex;
+
+	/**
+	 * Unknown keys, in order to warn only once about each of them.
+	 */
+	private final Set<String> unknownRuleKeys = new HashSet<String>();
 
 	private Rule findActiveTusarRule(String key) {
-		Rule rule = null;
-		if (!ruleCache.containsKey(key)) {
-			List<Rule> matchingRules = new LinkedList<Rule>();
-			for (ActiveRule activeRule : activeRules.findAll()) {
-				if (activeRule.ruleKey().rule().equals(key)) {
-					Rule potentialRule = ruleFinder.findByKey(activeRule.ruleKey());
-					if (potentialRule.getLanguage().equalsIgnoreCase(TusarLanguage.KEY)) {
-						matchingRules.add(potentialRule);
-						break;
+		if (ruleIndex == null) {
+			ruleIndex = indexActiveTusarRules();
+		}
+		Rule rule = ruleIndex.get(key);
+		if (rule == null && unknownRuleKeys.add(key)) {
+			logger.warn("Discarding violations refering to the unkown or unactive TUSAR rule '{}'.", key);
+		}
+		return rule;
+	}
+
+	/**
+	 * A single pass over the active rules. When a rule key is found in
+	 * several TUSAR repositories, the first repository in lexicographic order
+	 * wins.
+	 */
+	private Map<String, Rule> indexActiveTusarRules() {
+		Map<String, Rule> index = new HashMap<String, Rule>();
+		Map<String, Set<String>> ambiguousKeys = new TreeMap<String, Set<String>>();
+		for (ActiveRule activeRule : activeRules.findAll()) {
+			Rule rule = ruleFinder.findByKey(activeRule.ruleKey());
+			if (rule != null && TusarLanguage.KEY.equalsIgnoreCase(rule.getLanguage())) {
+				String key = activeRule.ruleKey().rule();
+				Rule previous = index.get(key);
+				if (previous == null) {
+					index.put(key, rule);
+				} else {
+					Set<String> repositories = ambiguousKeys.get(key);
+					if (repositories == null) {
+						repositories = new TreeSet<String>();
+						repositories.add(previous.ruleKey().repository());
+						ambiguousKeys.put(key, repositories);
 					}
-				}
-			}
-			int matchCount = matchingRules.size();
-			if (matchCount == 0) {
-				rule = null;
-				logger.warn("Discarding violations refering to the unkown or unactive TUSAR rule '{}'.", key);
-			} else if (matchCount == 1) {
-				rule = matchingRules.get(0);
-			} else {
-				rule = matchingRules.get(0);
-				if (logger.isWarnEnabled()) {
-					Set<String> repositories = new HashSet<String>();
-					for (Rule matchingRule : matchingRules) {
-						repositories.add(matchingRule.ruleKey().repository());
+					repositories.add(rule.ruleKey().repository());
+					if (rule.ruleKey().repository().compareTo(previous.ruleKey().repository()) < 0) {
+						index.put(key, rule);
 					}
-					logger.warn(
-					        "Arbitrary rule resolution of key '{}' between the following TUSAR repositories: '{}'.",
-					        key, repositories);
 				}
 			}
-			ruleCache.put(key, rule);
-		} else {
-			rule = ruleCache.get(key);
 		}
-		return rule;
+		for (Map.Entry<String, Set<String>> entry : ambiguousKeys.entrySet()) {
+			logger.warn("Rule resolution of key '{}' between the following TUSAR repositories, "
+			        + "the first one being used: '{}'.", entry.getKey(), entry.getValue());
+		}
+		logger.debug("Indexed {} active TUSAR rules", index.size());
+		return index;
 	}
 }
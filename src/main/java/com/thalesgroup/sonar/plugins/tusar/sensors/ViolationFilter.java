@@ -0,0 +1,190 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Rule;
+
+import com.thalesgroup.sonar.plugins.tusar.metrics.ViolationMetrics;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+
+/**
+ * Decide, violation after violation and across the reports of a module,
+ * which violations become issues: the violations having the same file, rule
+ * and line as a previous one are discarded as duplicated (when enabled), then
+ * the per file and per rule limits are applied. What is discarded is counted
+ * per file, in order to be measured.
+ */
+class ViolationFilter {
+
+	/*
+	 * The (file, rule, line) de-duplication keys are packed in a long, the
+	 * violations beyond these bounds being always kept.
+	 */
+
+	private static final int FILE_BITS = 22;
+
+	private static final int RULE_BITS = 18;
+
+	private static final int LINE_BITS = 64 - FILE_BITS - RULE_BITS;
+
+	private static class FileViolations {
+
+		/**
+		 * The first report referring to the file.
+		 */
+		private final Report report;
+
+		private final int id;
+
+		private int kept;
+
+		private int duplicated;
+
+		private int capped;
+
+		private FileViolations(Report report, int id) {
+			this.report = report;
+			this.id = id;
+		}
+	}
+
+	private static class RuleViolations {
+
+		private final int id;
+
+		private int kept;
+
+		private RuleViolations(int id) {
+			this.id = id;
+		}
+	}
+
+	private final boolean deduplication;
+
+	private final int maxPerFile;
+
+	private final int maxPerRule;
+
+	private final LongHashSet seenViolations = new LongHashSet();
+
+	private final Map<Resource, FileViolations> files = new LinkedHashMap<Resource, FileViolations>();
+
+	/**
+	 * The rules are expected to be the instances of a rule index.
+	 */
+	private final Map<Rule, RuleViolations> rules = new IdentityHashMap<Rule, RuleViolations>();
+
+	private int duplicatedCount;
+
+	private int cappedCount;
+
+	/**
+	 * @param maxPerFile
+	 *            The maximal number of violations kept for a file, 0 (or
+	 *            less) for no limit.
+	 * @param maxPerRule
+	 *            The maximal number of violations of a rule kept for the
+	 *            module, 0 (or less) for no limit.
+	 */
+	ViolationFilter(boolean deduplication, int maxPerFile, int maxPerRule) {
+		this.deduplication = deduplication;
+		this.maxPerFile = maxPerFile;
+		this.maxPerRule = maxPerRule;
+	}
+
+	/**
+	 * @param line
+	 *            Null for the whole file.
+	 * @return Whether the violation is kept.
+	 */
+	boolean accept(Report report, Resource resource, Rule rule, Integer line) {
+		FileViolations fileViolations = files.get(resource);
+		if (fileViolations == null) {
+			fileViolations = new FileViolations(report, files.size());
+			files.put(resource, fileViolations);
+		}
+		RuleViolations ruleViolations = rules.get(rule);
+		if (ruleViolations == null) {
+			ruleViolations = new RuleViolations(rules.size());
+			rules.put(rule, ruleViolations);
+		}
+
+		if (deduplication && isDuplicate(fileViolations.id, ruleViolations.id, line)) {
+			++fileViolations.duplicated;
+			++duplicatedCount;
+			return false;
+		} else if ((maxPerFile > 0 && fileViolations.kept >= maxPerFile)
+		        || (maxPerRule > 0 && ruleViolations.kept >= maxPerRule)) {
+			++fileViolations.capped;
+			++cappedCount;
+			return false;
+		}
+		++fileViolations.kept;
+		++ruleViolations.kept;
+		return true;
+	}
+
+	/**
+	 * @return The files having discarded violations.
+	 */
+	Collection<Resource> getFilteredResources() {
+		List<Resource> resources = new ArrayList<Resource>();
+		for (Map.Entry<Resource, FileViolations> entry : files.entrySet()) {
+			if (entry.getValue().duplicated > 0 || entry.getValue().capped > 0) {
+				resources.add(entry.getKey());
+			}
+		}
+		return resources;
+	}
+
+	/**
+	 * @return The first report referring to the file, to which its measures
+	 *         are attributed.
+	 */
+	Report getFirstReport(Resource resource) {
+		FileViolations fileViolations = files.get(resource);
+		return fileViolations != null ? fileViolations.report : null;
+	}
+
+	/**
+	 * Only meaningful once every report has been filtered.
+	 */
+	Collection<Measure> computeMeasures(Resource resource) {
+		FileViolations fileViolations = files.get(resource);
+		if (fileViolations == null || (fileViolations.duplicated == 0 && fileViolations.capped == 0)) {
+			return Collections.emptyList();
+		}
+		List<Measure> measures = new ArrayList<Measure>(2);
+		measures.add(new Measure(ViolationMetrics.DUPLICATED_VIOLATIONS, (double) fileViolations.duplicated));
+		measures.add(new Measure(ViolationMetrics.CAPPED_VIOLATIONS, (double) fileViolations.capped));
+		return measures;
+	}
+
+	int getDuplicatedCount() {
+		return duplicatedCount;
+	}
+
+	int getCappedCount() {
+		return cappedCount;
+	}
+
+	/**
+	 * @return Whether the same (file, rule, line) was already seen.
+	 */
+	private boolean isDuplicate(int fileId, int ruleId, Integer line) {
+		int lineValue = line != null ? line : 0;
+		if (fileId >= 1 << FILE_BITS || ruleId >= 1 << RULE_BITS || lineValue >= 1 << LINE_BITS) {
+			return false;
+		}
+		long key = ((long) fileId << (RULE_BITS + LINE_BITS)) | ((long) ruleId << LINE_BITS) | lineValue;
+		return !seenViolations.add(key);
+	}
+}
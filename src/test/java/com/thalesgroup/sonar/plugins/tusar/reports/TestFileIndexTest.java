@@ -0,0 +1,42 @@
+package com.thalesgroup.sonar.plugins.tusar.reports;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFileIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFind() throws IOException {
+		File root = folder.newFolder("test");
+		File fooTest = createFile(root, "com/acme/FooTest.java");
+		File barTest = createFile(root, "com/acme/BarTest.java");
+		createFile(root, "org/other/BarTest.java");
+
+		TestFileIndex index = new TestFileIndex(Collections.singletonList(root));
+		Assert.assertEquals(fooTest, index.find("com.acme.FooTest"));
+		Assert.assertEquals(fooTest, index.find("com.acme.FooTest$Nested"));
+		Assert.assertEquals(fooTest, index.find("com/acme/FooTest"));
+		Assert.assertEquals(fooTest, index.find("com\\acme\\FooTest.java"));
+		Assert.assertEquals(fooTest, index.find("FooTest"));
+		Assert.assertEquals(barTest, index.find("com.acme.BarTest"));
+		// Ambiguous.
+		Assert.assertNull(index.find("BarTest"));
+		Assert.assertNull(index.find("BazTest"));
+	}
+
+	private static File createFile(File root, String path) throws IOException {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+		return file;
+	}
+}
@@ -0,0 +1,67 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.utils.ParsingUtils;
+
+/**
+ * Per line cost of decoding the hits and branch counts of coverage reports,
+ * with {@link ParsingUtils#parseNumber(String, Locale)} as formerly done and
+ * with {@link NumberDecoder#decodeCount(String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountDecodingBenchmark {
+
+	private static final int LINE_COUNT = 4096;
+
+	private String[] hits;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		hits = new String[LINE_COUNT];
+		for (int i = 0; i < hits.length; ++i) {
+			// Mostly uncovered or rarely hit lines, a few hot ones.
+			hits[i] = Integer.toString(random.nextInt(4) == 0 ? random.nextInt(100000) : random.nextInt(3));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINE_COUNT)
+	public long parsingUtils() throws ParseException {
+		long sum = 0;
+		for (String value : hits) {
+			sum += (int) ParsingUtils.parseNumber(value, Locale.ENGLISH);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINE_COUNT)
+	public long numberDecoder() throws ParseException {
+		long sum = 0;
+		for (String value : hits) {
+			sum += NumberDecoder.decodeCount(value);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,90 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Resource;
+
+/**
+ * Cumulate a synthetic duplication set, each member being in its own file,
+ * either with the former approach (every member resolving every other member)
+ * or by resolving each member once. The resolution is simulated by a map
+ * lookup, which is far cheaper than the real one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DuplicationDataBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int memberCount;
+
+	private String[] paths;
+
+	private String[] startLines;
+
+	private Map<String, Resource> index;
+
+	@Setup
+	@SuppressWarnings("deprecation")
+	public void setUp() {
+		paths = new String[memberCount];
+		startLines = new String[memberCount];
+		index = new HashMap<String, Resource>();
+		for (int i = 0; i < memberCount; ++i) {
+			paths[i] = "src/generated/File" + i + ".c";
+			startLines[i] = Integer.toString(1 + i % 500);
+			index.put(paths[i], new File(paths[i]));
+		}
+	}
+
+	@Benchmark
+	public void quadraticResolution(Blackhole blackhole) {
+		Map<Resource, Integer> blockCounts = new HashMap<Resource, Integer>();
+		for (int i = 0; i < memberCount; ++i) {
+			Resource r1 = index.get(paths[i]);
+			Set<DuplicationData.Part> parts = new LinkedHashSet<DuplicationData.Part>();
+			for (int j = 0; j < memberCount; ++j) {
+				if (i != j) {
+					Resource r2 = index.get(paths[j]);
+					parts.add(new DuplicationData.Part(r2.getKey(), startLines[j]));
+				}
+			}
+			blockCounts.put(r1, parts.size());
+		}
+		blackhole.consume(blockCounts);
+	}
+
+	@Benchmark
+	public void singleResolution(Blackhole blackhole) {
+		Resource[] resources = new Resource[memberCount];
+		String[] keys = new String[memberCount];
+		for (int i = 0; i < memberCount; ++i) {
+			resources[i] = index.get(paths[i]);
+			keys[i] = resources[i].getKey();
+		}
+		Map<Resource, DuplicationData> dataPerFile = new LinkedHashMap<Resource, DuplicationData>();
+		DuplicationData.cumulate(dataPerFile, resources, keys, startLines, 10, false, 0);
+		blackhole.consume(dataPerFile);
+	}
+}
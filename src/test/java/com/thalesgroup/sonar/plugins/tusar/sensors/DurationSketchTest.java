@@ -0,0 +1,36 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DurationSketchTest {
+
+	@Test
+	public void testQuantiles() {
+		DurationSketch sketch = new DurationSketch();
+		for (int duration = 1; duration <= 1000; ++duration) {
+			sketch.add(duration);
+		}
+		Assert.assertEquals(500, sketch.getQuantile(0.5), 500 * DurationSketch.RELATIVE_ACCURACY);
+		Assert.assertEquals(900, sketch.getQuantile(0.9), 900 * DurationSketch.RELATIVE_ACCURACY);
+		Assert.assertEquals(990, sketch.getQuantile(0.99), 990 * DurationSketch.RELATIVE_ACCURACY);
+		Assert.assertEquals(1000, sketch.getMax());
+		Assert.assertEquals(0, new DurationSketch().getQuantile(0.5), 0);
+	}
+
+	@Test
+	public void testMergeAndEncode() {
+		DurationSketch a = new DurationSketch();
+		DurationSketch b = new DurationSketch();
+		for (int duration = 0; duration < 100; ++duration) {
+			a.add(duration);
+			b.add(10 * duration);
+		}
+		a.merge(b);
+		Assert.assertEquals(990, a.getMax());
+
+		DurationSketch decoded = DurationSketch.decode(a.encode());
+		Assert.assertEquals(a.encode(), decoded.encode());
+		Assert.assertEquals(a.getQuantile(0.9), decoded.getQuantile(0.9), 0);
+	}
+}
@@ -0,0 +1,24 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineDataBuilderTest {
+
+	@Test
+	public void testBuild() {
+		LineDataBuilder builder = new LineDataBuilder();
+		Assert.assertEquals("", builder.build());
+
+		builder.add(10, 3).add(2, 0).add(10, 5).add(1, 1);
+		Assert.assertEquals("1=1;2=0;10=5", builder.build());
+
+		// Reused.
+		for (int line = 1000; line > 0; --line) {
+			builder.add(line, line % 2);
+		}
+		String data = builder.build();
+		Assert.assertTrue(data.startsWith("1=1;2=0;3=1;"));
+		Assert.assertTrue(data.endsWith(";999=1;1000=0"));
+	}
+}
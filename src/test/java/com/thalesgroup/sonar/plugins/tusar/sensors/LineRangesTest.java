@@ -0,0 +1,54 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineRangesTest {
+
+	@Test
+	public void testAdd() {
+		LineRanges ranges = new LineRanges();
+		ranges.add(10, 5);
+		ranges.add(30, 5);
+		Assert.assertEquals(10, ranges.getLineCount());
+		Assert.assertEquals(2, ranges.getIntervalCount());
+
+		// Contained.
+		ranges.add(11, 2);
+		Assert.assertEquals(10, ranges.getLineCount());
+
+		// Bridging both intervals.
+		ranges.add(12, 20);
+		Assert.assertEquals(25, ranges.getLineCount());
+		Assert.assertEquals(1, ranges.getIntervalCount());
+
+		// Before, touching and empty.
+		ranges.add(1, 2);
+		ranges.add(35, 1);
+		ranges.add(50, 0);
+		Assert.assertEquals(28, ranges.getLineCount());
+		Assert.assertEquals(2, ranges.getIntervalCount());
+	}
+
+	@Test
+	public void testUnionAndIntersection() {
+		LineRanges a = new LineRanges();
+		a.add(1, 10);
+		a.add(20, 5);
+		LineRanges b = new LineRanges();
+		b.add(5, 3);
+		b.add(11, 4);
+		b.add(30, 1);
+
+		LineRanges union = LineRanges.union(a, b);
+		Assert.assertEquals(19, union.getLineCount());
+		Assert.assertEquals(3, union.getIntervalCount());
+
+		LineRanges intersection = LineRanges.intersection(a, b);
+		Assert.assertEquals(3, intersection.getLineCount());
+		Assert.assertEquals(1, intersection.getIntervalCount());
+
+		Assert.assertTrue(LineRanges.intersection(a, new LineRanges()).isEmpty());
+		Assert.assertEquals(15, LineRanges.union(new LineRanges(), a).getLineCount());
+	}
+}
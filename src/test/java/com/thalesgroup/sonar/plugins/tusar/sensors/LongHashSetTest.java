@@ -0,0 +1,22 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+	@Test
+	public void testAdd() {
+		LongHashSet set = new LongHashSet();
+		for (long value = -5000; value < 5000; ++value) {
+			Assert.assertTrue(set.add(value * 31));
+		}
+		for (long value = -5000; value < 5000; ++value) {
+			Assert.assertFalse(set.add(value * 31));
+		}
+		Assert.assertEquals(10000, set.size());
+		Assert.assertTrue(set.add(Long.MIN_VALUE));
+		Assert.assertFalse(set.add(Long.MIN_VALUE));
+		Assert.assertFalse(set.add(0L));
+	}
+}
@@ -0,0 +1,37 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MergedCoverageTest {
+
+	@Test
+	public void testMerge() {
+		MergedCoverage coverage = new MergedCoverage(null, null);
+		coverage.addLineHits(1, 0);
+		coverage.addLineHits(3, 2);
+		coverage.addLineHits(1, 1);
+		coverage.addConditions(3, 2, 1);
+		coverage.addConditions(3, 2, 2);
+
+		Assert.assertEquals(2d, coverage.getLines(), 0d);
+		Assert.assertEquals(2d, coverage.getCoveredLines(), 0d);
+		Assert.assertEquals(2d, coverage.getConditionsToCover(), 0d);
+		Assert.assertEquals(0d, coverage.getUncoveredConditions(), 0d);
+	}
+
+	@Test
+	public void testRejectBogusLines() {
+		MergedCoverage coverage = new MergedCoverage(null, null);
+		coverage.addLineHits(-1, 1);
+		coverage.addLineHits(2000000000, 1);
+		coverage.addConditions(MergedCoverage.MAX_LINE + 1, 2, 1);
+		Assert.assertFalse(coverage.hasLineCoverage());
+		Assert.assertFalse(coverage.hasBranchCoverage());
+		Assert.assertEquals(2, coverage.getRejectedLineCount());
+
+		coverage.addLineHits(MergedCoverage.MAX_LINE, 1);
+		Assert.assertEquals(1d, coverage.getCoveredLines(), 0d);
+		Assert.assertEquals(2, coverage.getRejectedLineCount());
+	}
+}
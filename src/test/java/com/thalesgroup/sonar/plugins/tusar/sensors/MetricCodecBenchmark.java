@@ -0,0 +1,99 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metric.ValueType;
+
+/**
+ * Compare the decoding of TUSAR measure values by a precompiled
+ * {@link MetricCodec} with the former type switch relying on
+ * {@link Double#valueOf(String)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricCodecBenchmark {
+
+	private static final int VALUE_COUNT = 4096;
+
+	/**
+	 * Percentage of invalid values.
+	 */
+	@Param({ "0", "5" })
+	public int invalidRatio;
+
+	private Metric metric;
+
+	private MetricCodec codec;
+
+	private String[] values;
+
+	@Setup
+	public void setUp() {
+		metric = new Metric.Builder("statements", "Statements", ValueType.FLOAT).create();
+		codec = MetricCodec.compile(metric);
+		Random random = new Random(42);
+		values = new String[VALUE_COUNT];
+		for (int i = 0; i < values.length; ++i) {
+			if (random.nextInt(100) < invalidRatio) {
+				values[i] = "n/a";
+			} else if (random.nextBoolean()) {
+				values[i] = Integer.toString(random.nextInt(100000));
+			} else {
+				values[i] = String.format(Locale.ROOT, "%.3f", random.nextDouble() * 1000);
+			}
+		}
+	}
+
+	@Benchmark
+	public void switchAndValueOf(Blackhole blackhole) {
+		for (String value : values) {
+			try {
+				blackhole.consume(legacyCreateMeasure(metric, value));
+			} catch (IllegalArgumentException e) {
+				blackhole.consume(e);
+			}
+		}
+	}
+
+	@Benchmark
+	public void compiledCodec(Blackhole blackhole) {
+		for (String value : values) {
+			blackhole.consume(codec.createMeasure(value));
+		}
+		codec.resetRejectedValueCount();
+	}
+
+	private static Measure legacyCreateMeasure(Metric metric, String value) {
+		switch (metric.getType()) {
+		case FLOAT:
+		case INT:
+		case MILLISEC:
+		case PERCENT:
+		case RATING:
+			return new Measure(metric, Double.valueOf(value));
+		default:
+			throw new IllegalArgumentException(String.format("Unknown type '%s' for metric '%s'", metric.getType(),
+			        metric.getKey()));
+		}
+	}
+}
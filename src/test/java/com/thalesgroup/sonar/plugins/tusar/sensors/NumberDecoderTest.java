@@ -0,0 +1,61 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.text.ParseException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NumberDecoderTest {
+
+	@Test
+	public void testDecode() {
+		Assert.assertEquals(0d, NumberDecoder.decode("0"), 0d);
+		Assert.assertEquals(42d, NumberDecoder.decode(" 42 "), 0d);
+		Assert.assertEquals(-42d, NumberDecoder.decode("-42"), 0d);
+		Assert.assertEquals(3.14d, NumberDecoder.decode("3.14"), 0d);
+		Assert.assertEquals(3.14d, NumberDecoder.decode("3,14"), 0d);
+		Assert.assertEquals(0.5d, NumberDecoder.decode(".5"), 0d);
+		Assert.assertEquals(1.5e3d, NumberDecoder.decode("1.5E3"), 0d);
+		Assert.assertEquals(12345678901234567890d, NumberDecoder.decode("12345678901234567890"), 0d);
+		Assert.assertEquals(0.1d, NumberDecoder.decode("0.1000000000000000000000000"), 0d);
+		// Not grouping-shaped.
+		Assert.assertEquals(0.5d, NumberDecoder.decode("0,500"), 0d);
+		Assert.assertEquals(1234.567d, NumberDecoder.decode("1234,567"), 0d);
+		Assert.assertEquals(1.25d, NumberDecoder.decode("1,25"), 0d);
+		Assert.assertEquals(1.0005d, NumberDecoder.decode("1,0005"), 0d);
+		Assert.assertEquals(1.5e3d, NumberDecoder.decode("1,5E3"), 0d);
+	}
+
+	@Test
+	public void testRejectAmbiguousComma() {
+		for (String value : new String[] { "1,000", "-999,999", "1,000,000", "1,000.5", "1.000,5", "1,000E3",
+		        "12,345,678,901,234,567,890" }) {
+			Assert.assertTrue(value, Double.isNaN(NumberDecoder.decode(value)));
+		}
+	}
+
+	@Test
+	public void testReject() {
+		for (String value : new String[] { "", " ", "-", ".", "n/a", "1.2.3", "1e", "NaN", "0x10" }) {
+			Assert.assertTrue(value, Double.isNaN(NumberDecoder.decode(value)));
+		}
+	}
+
+	@Test
+	public void testDecodeCount() throws ParseException {
+		Assert.assertEquals(0, NumberDecoder.decodeCount("0"));
+		Assert.assertEquals(42, NumberDecoder.decodeCount("42"));
+		Assert.assertEquals(-42, NumberDecoder.decodeCount("-42"));
+		Assert.assertEquals(999999999, NumberDecoder.decodeCount("999999999"));
+		// Left to ParsingUtils.
+		Assert.assertEquals(1234, NumberDecoder.decodeCount("1,234"));
+		Assert.assertEquals(3, NumberDecoder.decodeCount("3.7"));
+		Assert.assertEquals(Integer.MAX_VALUE, NumberDecoder.decodeCount("12345678901"));
+		Assert.assertEquals(0, NumberDecoder.decodeCount(""));
+	}
+
+	@Test(expected = ParseException.class)
+	public void testDecodeInvalidCount() throws ParseException {
+		NumberDecoder.decodeCount("n/a");
+	}
+}
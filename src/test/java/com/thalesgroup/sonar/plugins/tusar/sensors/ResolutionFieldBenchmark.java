@@ -0,0 +1,73 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per issue cost of setting the resolution of false positive issues, with
+ * the former field lookup for every issue and with a {@link ResolutionField}
+ * applied in bulk. A minimal class stands for the issue implementation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolutionFieldBenchmark {
+
+	private static final int ISSUE_COUNT = 1000;
+
+	private static final String FALSE_POSITIVE = "FALSE-POSITIVE";
+
+	static class FakeIssue {
+
+		@SuppressWarnings("unused")
+		private String resolution;
+	}
+
+	private List<FakeIssue> issues;
+
+	private ResolutionField resolutionField;
+
+	@Setup
+	public void setUp() {
+		issues = new ArrayList<FakeIssue>(ISSUE_COUNT);
+		for (int i = 0; i < ISSUE_COUNT; ++i) {
+			issues.add(new FakeIssue());
+		}
+		resolutionField = new ResolutionField();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ISSUE_COUNT)
+	public List<FakeIssue> lookupPerIssue() throws Exception {
+		for (FakeIssue issue : issues) {
+			Field field = issue.getClass().getDeclaredField("resolution");
+			field.setAccessible(true);
+			field.set(issue, FALSE_POSITIVE);
+			field.setAccessible(false);
+		}
+		return issues;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ISSUE_COUNT)
+	public int cachedField() {
+		return resolutionField.setAll(issues, FALSE_POSITIVE);
+	}
+}
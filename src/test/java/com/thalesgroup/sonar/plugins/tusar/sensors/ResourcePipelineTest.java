@@ -0,0 +1,85 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Resource;
+
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+import com.thalesgroup.sonar.plugins.tusar.sensors.AbstractSensor.MeasuresComputation;
+
+@SuppressWarnings("deprecation")
+public class ResourcePipelineTest {
+
+	private final Report report = new Report(new java.io.File("report.xml"), null);
+
+	private final Resource fileA = new File("src/a.c");
+
+	private final Resource fileB = new File("src/b.c");
+
+	private static final MeasuresComputation SUCCEEDING = new MeasuresComputation() {
+
+		@Override
+		public Collection<Measure> compute() {
+			return Collections.emptyList();
+		}
+	};
+
+	private static final MeasuresComputation FAILING = new MeasuresComputation() {
+
+		@Override
+		public Collection<Measure> compute() {
+			throw new IllegalArgumentException("Bogus report");
+		}
+	};
+
+	private static class RecordingSink implements ResourcePipeline.Sink {
+
+		private final List<Resource> resources = new ArrayList<Resource>();
+
+		@Override
+		public void accept(Report report, Resource resource, Collection<Measure> measures) {
+			resources.add(resource);
+		}
+	}
+
+	private static class FailingSink implements ResourcePipeline.Sink {
+
+		@Override
+		public void accept(Report report, Resource resource, Collection<Measure> measures) {
+			throw new IllegalStateException("Cannot save measures");
+		}
+	}
+
+	@Test
+	public void testComputationFailureIsSkipped() {
+		for (int parallelism : new int[] { 1, 4 }) {
+			RecordingSink sink = new RecordingSink();
+			ResourcePipeline pipeline = new ResourcePipeline(parallelism, sink);
+			pipeline.submit(report, fileA, FAILING);
+			pipeline.submit(report, fileB, SUCCEEDING);
+			pipeline.shutdown();
+			Assert.assertEquals(Collections.singletonList(fileB), sink.resources);
+		}
+	}
+
+	@Test
+	public void testSinkFailureIsPropagated() {
+		for (int parallelism : new int[] { 1, 4 }) {
+			ResourcePipeline pipeline = new ResourcePipeline(parallelism, new FailingSink());
+			try {
+				pipeline.submit(report, fileA, SUCCEEDING);
+				pipeline.shutdown();
+				Assert.fail("Sink failure swallowed with parallelism " + parallelism);
+			} catch (IllegalStateException e) {
+				Assert.assertEquals("Cannot save measures", e.getMessage());
+			}
+		}
+	}
+}
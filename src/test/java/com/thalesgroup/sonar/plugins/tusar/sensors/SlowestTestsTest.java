@@ -0,0 +1,25 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlowestTestsTest {
+
+	@Test
+	public void testTopK() {
+		SlowestTests slowestTests = new SlowestTests(3);
+		int[] durations = { 5, 50, 1, 20, 50, 7, 100, 50 };
+		for (int i = 0; i < durations.length; ++i) {
+			slowestTests.add("test" + i, durations[i]);
+		}
+		Assert.assertEquals("100=test6;50=test1;50=test4", slowestTests.encode());
+		Assert.assertEquals(slowestTests.encode(), SlowestTests.decode(slowestTests.encode()).encode());
+
+		SlowestTests merged = new SlowestTests(1);
+		merged.addAll(slowestTests, "Suite#");
+		Assert.assertEquals("100=Suite#test6", merged.encode());
+
+		Assert.assertTrue(new SlowestTests(0).isEmpty());
+		Assert.assertEquals("", SlowestTests.decode("").encode());
+	}
+}
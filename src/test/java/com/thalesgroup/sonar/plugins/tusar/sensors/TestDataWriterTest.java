@@ -0,0 +1,41 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDataWriterTest {
+
+	@Test
+	public void testWrite() {
+		TestDataWriter writer = new TestDataWriter(5, 1).start();
+		writer.writeTestCase(TestCaseDetails.STATUS_OK, 3, "a<b");
+		writer.writeFailedTestCase(TestCaseDetails.STATUS_FAILURE, 1, "t", false, "\"x\" & y", "0123456789");
+		// Beyond the stack trace count.
+		writer.writeFailedTestCase(TestCaseDetails.STATUS_ERROR, 2, "u", true, null, "trace");
+		Assert.assertEquals("<tests-details>" //
+		        + "<testcase status=\"ok\" time=\"3\" name=\"a&lt;b\"/>" //
+		        + "<testcase status=\"failure\" time=\"1\" name=\"t\"><failure message=\"&quot;x&quot; &amp; y\">"
+		        + "<![CDATA[01234\n...]]></failure></testcase>" //
+		        + "<testcase status=\"error\" time=\"2\" name=\"u\"><error message=\"\"><![CDATA[]]></error></testcase>"
+		        + "</tests-details>", writer.finish());
+	}
+
+	@Test
+	public void testAppend() {
+		TestDataWriter writer = new TestDataWriter(-1, -1).start();
+		writer.writeFailedTestCase(TestCaseDetails.STATUS_FAILURE, 1, "a", false, "m", "trace a");
+		writer.writeTestCase(TestCaseDetails.STATUS_OK, 2, "b");
+		String testData = writer.finish();
+
+		// Only two stack traces out of three are kept.
+		TestDataWriter merger = new TestDataWriter(-1, 2).start();
+		merger.append(testData);
+		merger.append(testData);
+		merger.append(testData);
+		String merged = merger.finish();
+		Assert.assertTrue(merged.startsWith("<tests-details><testcase status=\"failure\""));
+		Assert.assertTrue(merged.endsWith("name=\"b\"/></tests-details>"));
+		Assert.assertEquals(2, merged.split("trace a", -1).length - 1);
+		Assert.assertEquals(6, merged.split("<testcase ", -1).length - 1);
+	}
+}
@@ -0,0 +1,105 @@
+package com.thalesgroup.sonar.plugins.tusar.sensors;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Rule;
+
+import com.thalesgroup.sonar.plugins.tusar.metrics.ViolationMetrics;
+import com.thalesgroup.sonar.plugins.tusar.reports.ReportExtractor.Report;
+
+@SuppressWarnings("deprecation")
+public class ViolationFilterTest {
+
+	private final Report report1 = new Report(new java.io.File("report1.xml"), null);
+
+	private final Report report2 = new Report(new java.io.File("report2.xml"), null);
+
+	private final Resource fileA = new File("src/a.c");
+
+	private final Resource fileB = new File("src/b.c");
+
+	private final Rule rule1 = Rule.create("tusar", "R1");
+
+	private final Rule rule2 = Rule.create("tusar", "R2");
+
+	@Test
+	public void testDeduplicationAcrossReports() {
+		ViolationFilter filter = new ViolationFilter(true, 0, 0);
+		Assert.assertTrue(filter.accept(report1, fileA, rule1, 3));
+		Assert.assertFalse(filter.accept(report1, fileA, rule1, 3));
+		Assert.assertFalse(filter.accept(report2, fileA, rule1, 3));
+		// Any other file, rule or line.
+		Assert.assertTrue(filter.accept(report2, fileA, rule1, null));
+		Assert.assertTrue(filter.accept(report2, fileA, rule1, 4));
+		Assert.assertTrue(filter.accept(report2, fileA, rule2, 3));
+		Assert.assertTrue(filter.accept(report2, fileB, rule1, 3));
+		Assert.assertFalse(filter.accept(report2, fileA, rule1, null));
+
+		Assert.assertEquals(3, filter.getDuplicatedCount());
+		Assert.assertEquals(0, filter.getCappedCount());
+		Assert.assertEquals(Arrays.asList(fileA), filter.getFilteredResources());
+		Assert.assertSame(report1, filter.getFirstReport(fileA));
+		assertMeasures(filter.computeMeasures(fileA), 3, 0);
+		Assert.assertTrue(filter.computeMeasures(fileB).isEmpty());
+	}
+
+	@Test
+	public void testWithoutDeduplication() {
+		ViolationFilter filter = new ViolationFilter(false, 0, 0);
+		Assert.assertTrue(filter.accept(report1, fileA, rule1, 3));
+		Assert.assertTrue(filter.accept(report2, fileA, rule1, 3));
+		Assert.assertTrue(filter.getFilteredResources().isEmpty());
+		Assert.assertTrue(filter.computeMeasures(fileA).isEmpty());
+	}
+
+	@Test
+	public void testMaxPerFile() {
+		ViolationFilter filter = new ViolationFilter(true, 2, 0);
+		Assert.assertTrue(filter.accept(report1, fileA, rule1, 1));
+		// Duplicates don't count.
+		Assert.assertFalse(filter.accept(report1, fileA, rule1, 1));
+		Assert.assertTrue(filter.accept(report1, fileA, rule2, 2));
+		Assert.assertFalse(filter.accept(report2, fileA, rule1, 3));
+		Assert.assertFalse(filter.accept(report2, fileA, rule2, 4));
+		Assert.assertTrue(filter.accept(report2, fileB, rule1, 1));
+		Assert.assertTrue(filter.accept(report2, fileB, rule1, 2));
+
+		Assert.assertEquals(1, filter.getDuplicatedCount());
+		Assert.assertEquals(2, filter.getCappedCount());
+		assertMeasures(filter.computeMeasures(fileA), 1, 2);
+		Assert.assertTrue(filter.computeMeasures(fileB).isEmpty());
+	}
+
+	@Test
+	public void testMaxPerRule() {
+		ViolationFilter filter = new ViolationFilter(false, 0, 2);
+		Assert.assertTrue(filter.accept(report1, fileA, rule1, 1));
+		Assert.assertTrue(filter.accept(report1, fileB, rule1, 1));
+		Assert.assertFalse(filter.accept(report2, fileB, rule1, 2));
+		Assert.assertTrue(filter.accept(report2, fileB, rule2, 2));
+
+		Assert.assertEquals(0, filter.getDuplicatedCount());
+		Assert.assertEquals(1, filter.getCappedCount());
+		Assert.assertEquals(Arrays.asList(fileB), filter.getFilteredResources());
+		Assert.assertSame(report1, filter.getFirstReport(fileB));
+		assertMeasures(filter.computeMeasures(fileB), 0, 1);
+	}
+
+	private static void assertMeasures(Collection<Measure> measures, int duplicated, int capped) {
+		Assert.assertEquals(2, measures.size());
+		Iterator<Measure> iterator = measures.iterator();
+		Measure measure = iterator.next();
+		Assert.assertEquals(ViolationMetrics.DUPLICATED_VIOLATIONS, measure.getMetric());
+		Assert.assertEquals((double) duplicated, measure.getValue(), 0d);
+		measure = iterator.next();
+		Assert.assertEquals(ViolationMetrics.CAPPED_VIOLATIONS, measure.getMetric());
+		Assert.assertEquals((double) capped, measure.getValue(), 0d);
+	}
+}